@@ -1,9 +1,15 @@
 function TLWebView(controller) {
     this.controller = controller
     controller.adapter = this
+    this.startedVisits = {}
 
     var turbolinksIsReady = typeof Turbolinks !== "undefined" && Turbolinks !== null
     TurbolinksNative.setTurbolinksIsReady(turbolinksIsReady);
+
+    if (turbolinksIsReady && TurbolinksNative.isPrefetchEnabled() && "IntersectionObserver" in window) {
+        this.observeLinksForPrefetch()
+        document.addEventListener("turbolinks:load", this.observeLinksForPrefetch.bind(this), false)
+    }
 }
 
 TLWebView.prototype = {
@@ -43,9 +49,12 @@ TLWebView.prototype = {
         }
     },
 
+    // Cancelled visits are usually no longer the current one, so look them up by identifier
     cancelVisitWithIdentifier: function(identifier) {
-        if (identifier == this.currentVisit.identifier) {
-            this.currentVisit.cancel()
+        var visit = this.startedVisits[identifier]
+        if (visit) {
+            delete this.startedVisits[identifier]
+            visit.cancel()
         }
     },
 
@@ -59,7 +68,8 @@ TLWebView.prototype = {
 
     visitStarted: function(visit) {
         this.currentVisit = visit
-        TurbolinksNative.visitStarted(visit.identifier, visit.hasCachedSnapshot());
+        this.startedVisits[visit.identifier] = visit
+        TurbolinksNative.visitStarted(visit.identifier, visit.hasCachedSnapshot(), visit.location.absoluteURL, this.now());
     },
 
     visitRequestStarted: function(visit) {
@@ -68,10 +78,11 @@ TLWebView.prototype = {
     },
 
     visitRequestCompleted: function(visit) {
-        TurbolinksNative.visitRequestCompleted(visit.identifier);
+        TurbolinksNative.visitRequestCompleted(visit.identifier, this.now());
     },
 
     visitRequestFailedWithStatusCode: function(visit, statusCode) {
+        delete this.startedVisits[visit.identifier]
         TurbolinksNative.visitRequestFailedWithStatusCode(visit.identifier, statusCode);
     },
 
@@ -81,13 +92,15 @@ TLWebView.prototype = {
     },
 
     visitRendered: function(visit) {
+        var self = this
         this.afterNextRepaint(function() {
-            TurbolinksNative.visitRendered(visit.identifier)
+            TurbolinksNative.visitRendered(visit.identifier, self.now())
         })
     },
 
     visitCompleted: function(visit) {
-        TurbolinksNative.visitCompleted(visit.identifier, visit.restorationIdentifier)
+        delete this.startedVisits[visit.identifier]
+        TurbolinksNative.visitCompleted(visit.identifier, visit.restorationIdentifier, this.now())
     },
 
     pageInvalidated: function() {
@@ -98,6 +111,46 @@ TLWebView.prototype = {
     // Private
     // -----------------------------------------------------------------------
 
+    observeLinksForPrefetch: function() {
+        if (this.prefetchObserver) {
+            this.prefetchObserver.disconnect()
+        }
+
+        var reportedLocations = {}
+        var observer = this.prefetchObserver = new IntersectionObserver(function(entries) {
+            entries.forEach(function(entry) {
+                if (!entry.isIntersecting) return
+
+                observer.unobserve(entry.target)
+                var location = entry.target.href.split("#")[0]
+                if (!reportedLocations[location]) {
+                    reportedLocations[location] = true
+                    TurbolinksNative.prefetchLocation(location, window.location.href)
+                }
+            })
+        })
+
+        var links = document.querySelectorAll("a[href]")
+        for (var i = 0; i < links.length; i++) {
+            if (this.isPrefetchableLink(links[i])) {
+                observer.observe(links[i])
+            }
+        }
+    },
+
+    isPrefetchableLink: function(link) {
+        return link.origin == window.location.origin &&
+            link.href.split("#")[0] != window.location.href.split("#")[0] &&
+            !link.hasAttribute("target") &&
+            !link.hasAttribute("download") &&
+            !link.hasAttribute("data-method") &&
+            !link.closest("[data-turbolinks='false']")
+    },
+
+    now: function() {
+        return window.performance ? performance.now() : Date.now()
+    },
+
     afterNextRepaint: function(callback) {
       requestAnimationFrame(function() {
         requestAnimationFrame(callback)
@@ -105,8 +158,69 @@ TLWebView.prototype = {
     }
 }
 
-try {
-    window.webView = new TLWebView(Turbolinks.controller)
-} catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
-    TurbolinksNative.turbolinksDoesNotExist()
+// Pushes the document height, scroll position and title to native whenever they change,
+// at most once per animation frame
+function TLPageMetrics() {
+    this.frameRequested = false
+    this.lastHeight = this.lastScrollX = this.lastScrollY = this.lastTitle = null
+
+    var schedule = this.schedule.bind(this)
+    window.addEventListener("scroll", schedule, false)
+    window.addEventListener("resize", schedule, false)
+    window.addEventListener("load", schedule, false)
+    document.addEventListener("turbolinks:render", schedule, false)
+    document.addEventListener("turbolinks:load", schedule, false)
+
+    if ("ResizeObserver" in window) {
+        new ResizeObserver(schedule).observe(document.documentElement)
+    }
+
+    this.schedule()
+}
+
+TLPageMetrics.prototype = {
+    schedule: function() {
+        if (this.frameRequested) return
+        this.frameRequested = true
+        requestAnimationFrame(this.push.bind(this))
+    },
+
+    push: function() {
+        this.frameRequested = false
+
+        var height = Math.max(document.documentElement.scrollHeight, document.body ? document.body.scrollHeight : 0)
+        var scrollX = window.pageXOffset
+        var scrollY = window.pageYOffset
+        var title = document.title || ""
+
+        if (height === this.lastHeight && scrollX === this.lastScrollX &&
+            scrollY === this.lastScrollY && title === this.lastTitle) return
+
+        this.lastHeight = height
+        this.lastScrollX = scrollX
+        this.lastScrollY = scrollY
+        this.lastTitle = title
+        TurbolinksNative.pageMetricsChanged(height, scrollX, scrollY, title)
+    }
+}
+
+if (!window.pageMetrics) {
+    window.pageMetrics = new TLPageMetrics()
+}
+
+function startBridge() {
+    if (window.webView) return
+
+    try {
+        window.webView = new TLWebView(Turbolinks.controller)
+    } catch (e) { // Most likely reached a page where Turbolinks.controller returned "Uncaught ReferenceError: Turbolinks is not defined"
+        TurbolinksNative.turbolinksDoesNotExist()
+    }
+}
+
+// At document start, or inlined in a page, Turbolinks is only loaded once the document is parsed
+if (document.readyState == "loading") {
+    document.addEventListener("DOMContentLoaded", startBridge, false)
+} else {
+    startBridge()
 }
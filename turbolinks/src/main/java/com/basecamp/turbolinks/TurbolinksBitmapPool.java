@@ -0,0 +1,175 @@
+package com.basecamp.turbolinks;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * <p>A process-wide pool of screenshot bitmaps, keyed by width, height and config. Screenshots
+ * taken when the shared WebView moves between {@link TurbolinksView}s are handed back here once
+ * they are no longer displayed, so the next screenshot of the same size reuses the memory instead
+ * of allocating a new full-screen bitmap.</p>
+ *
+ * <p>The pool holds at most {@link #getMaxSizeBytes()} bytes; the least recently released bitmaps
+ * are dropped first.</p>
+ */
+public class TurbolinksBitmapPool {
+    private static final int DEFAULT_MAX_SIZE_DIVISOR = 8;
+
+    private static volatile TurbolinksBitmapPool instance;
+
+    // Oldest release first
+    private final ArrayDeque<Bitmap> bitmaps = new ArrayDeque<>();
+    private long maxSizeBytes;
+    private long sizeBytes;
+    private int hitCount;
+    private int missCount;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * Private constructor, use {@link #getInstance()}.
+     */
+    private TurbolinksBitmapPool() {
+        this.maxSizeBytes = Runtime.getRuntime().maxMemory() / DEFAULT_MAX_SIZE_DIVISOR;
+    }
+
+    /**
+     * <p>Returns the process-wide pool, shared by all views and sessions.</p>
+     *
+     * @return The shared pool, guaranteed to not be null.
+     */
+    public static TurbolinksBitmapPool getInstance() {
+        if (instance == null) {
+            synchronized (TurbolinksBitmapPool.class) {
+                if (instance == null) {
+                    instance = new TurbolinksBitmapPool();
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets how many bytes of bitmaps the pool may hold, dropping bitmaps if it already holds
+     * more. The default is an eighth of the app's maximum heap. Passing 0 disables pooling.</p>
+     *
+     * @param maxSizeBytes The byte cap.
+     */
+    public synchronized void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = Math.max(0, maxSizeBytes);
+        trimToSize(this.maxSizeBytes);
+    }
+
+    /**
+     * @return The byte cap of the pool.
+     */
+    public synchronized long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    /**
+     * @return The bytes of the bitmaps currently held by the pool.
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return The number of requests served with a pooled bitmap.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of requests that found no pooled bitmap of the right size.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * <p>Drops the least recently released bitmaps until the pool holds at most the given number
+     * of bytes.</p>
+     *
+     * @param targetSizeBytes The number of bytes to keep at most.
+     * @return The number of bytes dropped.
+     */
+    public synchronized long trimToSize(long targetSizeBytes) {
+        long before = sizeBytes;
+        while (sizeBytes > targetSizeBytes && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.poll();
+            sizeBytes -= bitmap.getByteCount();
+            bitmap.recycle();
+        }
+        return before - sizeBytes;
+    }
+
+    /**
+     * <p>Drops every pooled bitmap.</p>
+     *
+     * @return The number of bytes dropped.
+     */
+    public long clear() {
+        return trimToSize(0);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Takes a pooled bitmap of exactly the given size and config, cleared to transparent.</p>
+     *
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     * @param config Bitmap config.
+     * @return A reusable bitmap, or null if the pool has none of that size.
+     */
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Iterator<Bitmap> iterator = bitmaps.descendingIterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                iterator.remove();
+                sizeBytes -= bitmap.getByteCount();
+                hitCount++;
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+
+        missCount++;
+        return null;
+    }
+
+    /**
+     * <p>Hands a bitmap that is no longer displayed back to the pool. The caller must not use it
+     * afterwards.</p>
+     *
+     * @param bitmap The bitmap to reuse.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+
+        int byteCount = bitmap.getByteCount();
+        if (byteCount > maxSizeBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        bitmaps.offer(bitmap);
+        sizeBytes += byteCount;
+        trimToSize(maxSizeBytes);
+    }
+}
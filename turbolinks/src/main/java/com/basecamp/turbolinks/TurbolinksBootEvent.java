@@ -0,0 +1,91 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>One entry of the {@link TurbolinksBootEventLog}: what happened while a session was being
+ * created, to which session, and when.</p>
+ */
+public class TurbolinksBootEvent {
+
+    /**
+     * What happened. Codes are stable and may be stored or compared across app versions.
+     */
+    public enum Code {
+        SESSION_REQUESTED(1),
+        DEFAULT_SESSION_CREATED(2),
+        SESSION_CONSTRUCTED(3),
+        WEBVIEW_ACQUIRED(4),
+        JAVASCRIPT_INTERFACE_ADDED(5),
+        WEBVIEW_CLIENT_SET(6),
+        LAYER_TYPE_HARDWARE(7),
+        LAYER_TYPE_SOFTWARE(8),
+        LAYER_TYPE_FAILED(9),
+        BRIDGE_DOCUMENT_START(10);
+
+        private final int value;
+
+        Code(int value) {
+            this.value = value;
+        }
+
+        /**
+         * @return The stable numeric code.
+         */
+        public int getValue() {
+            return value;
+        }
+    }
+
+    private final long sequence;
+    private final long timestampNanos;
+    private final int sessionId;
+    private final Code code;
+    private final long durationNanos;
+
+    TurbolinksBootEvent(long sequence, long timestampNanos, int sessionId, Code code, long durationNanos) {
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+        this.sessionId = sessionId;
+        this.code = code;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return The position of the event in the log, increasing by one per recorded event.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return When the event was recorded, from {@code SystemClock.elapsedRealtimeNanos()}.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return The id of the session the event belongs to, or 0 if it happened before a session
+     * existed.
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    /**
+     * @return How long the step took, or -1 if the event isn't timed.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " session " + sessionId + " " + code
+                + (durationNanos >= 0 ? " (" + durationNanos / 1000 + " us)" : "")
+                + " @" + timestampNanos;
+    }
+}
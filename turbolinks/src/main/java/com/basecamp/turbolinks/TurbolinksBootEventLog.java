@@ -0,0 +1,140 @@
+package com.basecamp.turbolinks;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A fixed-size, process-wide log of what happens while sessions are created: which session,
+ * which step, when, and how long timed steps took. It never grows; once full, the oldest events
+ * are overwritten.</p>
+ *
+ * <p>Recording is lock-free so it can be called from any thread during startup. Events are read
+ * with {@link #drain()}, or logged to a {@link TurbolinksDebugCallback} with
+ * {@link TurbolinksSession#drainBootEvents(TurbolinksDebugCallback)}.</p>
+ */
+public final class TurbolinksBootEventLog {
+    static final int CAPACITY = 128; // Must be a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final String TAG = "TurbolinksBootEvents";
+    private static final TurbolinksBootEvent.Code[] CODES = TurbolinksBootEvent.Code.values();
+
+    private static final TurbolinksBootEventLog instance = new TurbolinksBootEventLog();
+
+    private final AtomicLong cursor = new AtomicLong();
+    // Per slot: sequence + 1 of the event it holds, 0 while empty, negative while being written
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLongArray timestamps = new AtomicLongArray(CAPACITY);
+    private final AtomicLongArray durations = new AtomicLongArray(CAPACITY);
+    private final AtomicIntegerArray sessionIds = new AtomicIntegerArray(CAPACITY);
+    private final AtomicIntegerArray codes = new AtomicIntegerArray(CAPACITY);
+    private long readCursor;
+    private long droppedCount;
+
+    TurbolinksBootEventLog() {}
+
+    /**
+     * @return The process-wide log.
+     */
+    public static TurbolinksBootEventLog getInstance() {
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns the events recorded since the last drain, oldest first. Events that were
+     * overwritten before they could be drained are counted in {@link #getDroppedCount()}.</p>
+     *
+     * @return The drained events, never null.
+     */
+    public synchronized List<TurbolinksBootEvent> drain() {
+        long end = cursor.get();
+        long start = Math.max(readCursor, end - CAPACITY);
+        droppedCount += start - readCursor;
+
+        List<TurbolinksBootEvent> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            TurbolinksBootEvent event = read(sequence);
+            if (event != null) {
+                events.add(event);
+            } else {
+                droppedCount++;
+            }
+        }
+        readCursor = end;
+        return events;
+    }
+
+    /**
+     * <p>Drains the log and sends every event to the callback at DEBUG level.</p>
+     *
+     * @param callback The callback to send the events to.
+     * @return The number of events sent.
+     */
+    public int drainTo(TurbolinksDebugCallback callback) {
+        List<TurbolinksBootEvent> events = drain();
+        for (TurbolinksBootEvent event : events) {
+            callback.logEvent(Log.DEBUG, TAG, event.toString());
+        }
+        return events.size();
+    }
+
+    /**
+     * @return The number of events that were overwritten, or still being written, when drained.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    void record(int sessionId, TurbolinksBootEvent.Code code) {
+        record(sessionId, code, -1);
+    }
+
+    /**
+     * <p>Claims the next slot and writes the event into it. The slot's sequence is marked as
+     * being written first, so a concurrent drain skips it instead of reading a torn event.</p>
+     */
+    void record(int sessionId, TurbolinksBootEvent.Code code, long durationNanos) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+
+        sequences.set(slot, -(sequence + 1));
+        timestamps.set(slot, SystemClock.elapsedRealtimeNanos());
+        durations.set(slot, durationNanos);
+        sessionIds.set(slot, sessionId);
+        codes.set(slot, code.ordinal());
+        sequences.set(slot, sequence + 1);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * @return The event, or null if its slot has been overwritten or is being written.
+     */
+    private TurbolinksBootEvent read(long sequence) {
+        int slot = (int) (sequence & MASK);
+        if (sequences.get(slot) != sequence + 1) return null;
+
+        long timestamp = timestamps.get(slot);
+        long duration = durations.get(slot);
+        int sessionId = sessionIds.get(slot);
+        int code = codes.get(slot);
+
+        if (sequences.get(slot) != sequence + 1) return null;
+        return new TurbolinksBootEvent(sequence, timestamp, sessionId, CODES[code], duration);
+    }
+}
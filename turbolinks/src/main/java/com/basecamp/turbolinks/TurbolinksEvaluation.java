@@ -0,0 +1,157 @@
+package com.basecamp.turbolinks;
+
+import android.os.SystemClock;
+import android.webkit.ValueCallback;
+
+import com.google.gson.Gson;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A handle to a script running in the Turbolinks webView through {@code evaluateJavascript}.
+ * The result is parsed from its JSON representation into the requested type and delivered to a
+ * {@link TurbolinksEvaluationCallback} on the main thread.</p>
+ *
+ * <p>A running script cannot be stopped, but cancelling the evaluation guarantees its callback will
+ * not be called.</p>
+ *
+ * @param <T> The type the script's result is parsed into.
+ */
+public class TurbolinksEvaluation<T> {
+    private static final Gson GSON = new Gson();
+
+    private final String script;
+    private final Class<T> resultType;
+    private final TurbolinksEvaluationCallback<T> callback;
+    private final TurbolinksDebugCallback debugCallback;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile long startTime;
+    private volatile long roundTripMillis = -1;
+
+    private final ValueCallback<String> valueCallback = new ValueCallback<String>() {
+        @Override
+        public void onReceiveValue(String value) {
+            roundTripMillis = SystemClock.elapsedRealtime() - startTime;
+            TurbolinksLog.d("evaluateJavascript round trip: " + roundTripMillis + " ms", debugCallback);
+            deliver(value);
+        }
+    };
+
+    /**
+     * @param script        The Javascript to evaluate.
+     * @param resultType    The type to parse the result into, or null to ignore the result.
+     * @param callback      Receives the result, may be null.
+     * @param debugCallback The callback to send log messages on, may be null.
+     */
+    TurbolinksEvaluation(String script, Class<T> resultType, TurbolinksEvaluationCallback<T> callback,
+                         TurbolinksDebugCallback debugCallback) {
+        this.script = script;
+        this.resultType = resultType;
+        this.callback = callback;
+        this.debugCallback = debugCallback;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Cancels delivery of the result.</p>
+     *
+     * @return True if the evaluation was cancelled, false if it had already finished.
+     */
+    public boolean cancel() {
+        if (done.compareAndSet(false, true)) {
+            cancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return True if {@link #cancel()} stopped the result from being delivered.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return True if the result was delivered, the evaluation failed or it was cancelled.
+     */
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * @return Time between handing the script to the webView and receiving its result, or -1 if
+     * no result has been received yet.
+     */
+    public long getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    /**
+     * @return The Javascript being evaluated.
+     */
+    public String getScript() {
+        return script;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts the round trip clock and returns the callback to hand to
+     * {@code WebView.evaluateJavascript}. Returns null when nobody is interested in the result, so
+     * the webView can skip sending it back.</p>
+     *
+     * @return The value callback, or null.
+     */
+    ValueCallback<String> start() {
+        startTime = SystemClock.elapsedRealtime();
+        if (callback == null && debugCallback == null && !TurbolinksLog.getDebugLoggingEnabled()) {
+            done.set(true);
+            return null;
+        }
+        return valueCallback;
+    }
+
+    /**
+     * <p>Fails the evaluation without running the script.</p>
+     *
+     * @param exception The cause of the failure.
+     */
+    void fail(Exception exception) {
+        if (!done.compareAndSet(false, true)) return;
+
+        TurbolinksLog.e("evaluateJavascript failed: " + exception.getMessage(), debugCallback);
+        if (callback != null) {
+            callback.onError(exception);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void deliver(String value) {
+        if (!done.compareAndSet(false, true) || callback == null) return;
+
+        T result;
+        try {
+            result = parse(value);
+        } catch (RuntimeException e) {
+            callback.onError(e);
+            return;
+        }
+        callback.onResult(result, roundTripMillis);
+    }
+
+    private T parse(String value) {
+        if (resultType == null || resultType == Void.class || value == null) return null;
+
+        return GSON.fromJson(value, resultType);
+    }
+}
@@ -0,0 +1,29 @@
+package com.basecamp.turbolinks;
+
+import androidx.annotation.Nullable;
+
+/**
+ * <p>Receives the result of a script run through
+ * {@link TurbolinksSession#evaluate(String, Class, TurbolinksEvaluationCallback)}. Both methods are
+ * called on the main thread, and never after the evaluation has been cancelled.</p>
+ *
+ * @param <T> The type the script's result is parsed into.
+ */
+public interface TurbolinksEvaluationCallback<T> {
+
+    /**
+     * Called with the parsed result of the script.
+     *
+     * @param result          The script's result parsed into the requested type, or null if the
+     *                        script returned null or undefined.
+     * @param roundTripMillis Time between handing the script to the webView and receiving its result.
+     */
+    void onResult(@Nullable T result, long roundTripMillis);
+
+    /**
+     * Called if the script could not be run or its result could not be parsed into the requested type.
+     *
+     * @param exception The cause of the failure.
+     */
+    void onError(Exception exception);
+}
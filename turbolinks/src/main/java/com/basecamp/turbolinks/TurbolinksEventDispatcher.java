@@ -0,0 +1,146 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Queues bridge events for the main thread and delivers them in order, in a single batch per
+ * frame. A busy visit reports several events within one frame (rendered, completed, request
+ * finished); batching them costs one main thread message instead of one each.</p>
+ *
+ * <p>Events can be queued from any thread. UI operations that only need to happen once per
+ * frame, such as ending the pull to refresh spinner, are queued with
+ * {@link #dispatchOnce(Runnable)}; queuing one that is already pending drops the earlier copy,
+ * so it runs once, after everything queued before the latest request.</p>
+ */
+final class TurbolinksEventDispatcher implements Choreographer.FrameCallback {
+    private static final String CALL_SITE = "dispatchEvents";
+
+    private final Context context;
+    // Guarded by itself, together with frameRequested and released
+    private final ArrayList<Runnable> pending = new ArrayList<>();
+    // Only touched on the main thread
+    private final ArrayList<Runnable> delivering = new ArrayList<>();
+    private boolean frameRequested;
+    private boolean released;
+    private int droppedCount;
+
+    private final Runnable requestFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(TurbolinksEventDispatcher.this);
+        }
+    };
+
+    TurbolinksEventDispatcher(Context context) {
+        this.context = context;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Queues an event to run on the main thread at the next frame, after everything queued
+     * before it.</p>
+     *
+     * @param event The work to run on the main thread.
+     */
+    void dispatch(Runnable event) {
+        enqueue(event, false);
+    }
+
+    /**
+     * <p>Same as {@link #dispatch(Runnable)}, but if the same instance is already waiting for the
+     * next frame, that earlier copy is dropped. Use only for operations that set a state, where
+     * the last request is the one that counts.</p>
+     *
+     * @param operation The work to run on the main thread, at most once per frame.
+     */
+    void dispatchOnce(Runnable operation) {
+        enqueue(operation, true);
+    }
+
+    /**
+     * <p>Runs everything queued so far, in order. Events queued while the batch is running are
+     * left for the next frame. Must be called on the main thread.</p>
+     */
+    void flush() {
+        synchronized (pending) {
+            frameRequested = false;
+            delivering.addAll(pending);
+            pending.clear();
+        }
+
+        try {
+            for (int i = 0, size = delivering.size(); i < size; i++) {
+                delivering.get(i).run();
+            }
+        } finally {
+            delivering.clear();
+        }
+    }
+
+    /**
+     * <p>Drops every queued event and stops accepting new ones. Must be called on the main
+     * thread.</p>
+     */
+    void release() {
+        synchronized (pending) {
+            released = true;
+            frameRequested = false;
+            pending.clear();
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * @return The number of events waiting for the next frame.
+     */
+    int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return The number of operations dropped because the same one was already pending.
+     */
+    int getDroppedCount() {
+        synchronized (pending) {
+            return droppedCount;
+        }
+    }
+
+    // ---------------------------------------------------
+    // Choreographer.FrameCallback
+    // ---------------------------------------------------
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void enqueue(Runnable event, boolean once) {
+        synchronized (pending) {
+            if (released) return;
+
+            if (once && pending.remove(event)) {
+                droppedCount++;
+            }
+
+            pending.add(event);
+            if (frameRequested) return;
+            frameRequested = true;
+        }
+
+        // Choreographer is per looper, so the frame has to be requested from the main thread
+        TurbolinksHelper.runOnMainThread(context, CALL_SITE, requestFrame);
+    }
+}
@@ -4,8 +4,8 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.MutableContextWrapper;
 import android.os.Build;
-import android.os.Handler;
 import android.util.Base64;
+import android.util.Log;
 import android.view.ViewGroup;
 import android.webkit.WebChromeClient;
 import android.webkit.WebSettings;
@@ -13,18 +13,25 @@ import android.webkit.WebView;
 
 import android.widget.FrameLayout;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
-import org.apache.commons.lang3.StringUtils;
-
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Locale;
+
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
 
 class TurbolinksHelper {
-    private static String scriptInjectionFormat = "(function(){var parent = document.getElementsByTagName('head').item(0);var script = document.createElement('script');script.type = 'text/javascript';script.innerHTML = window.atob('%s');parent.appendChild(script);return true;})()";
+    private static final String BRIDGE_ASSET_PATH = "js/turbolinks_bridge.js";
+    private static final String scriptInjectionFormat = "(function(){var parent = document.getElementsByTagName('head').item(0);var script = document.createElement('script');script.type = 'text/javascript';script.innerHTML = window.atob('%s');parent.appendChild(script);return true;})()";
+    private static final String DOCUMENT_START_PREFIX = "(function(){if (window.top !== window || !/^https?:$/.test(location.protocol)) return;\n";
+    private static final String DOCUMENT_START_SUFFIX = "\n})()";
+    private static volatile String bridgeInjectionScript;
+    private static volatile String documentStartBridgeScript;
 
     // ---------------------------------------------------
     // Package public
@@ -70,11 +77,133 @@ class TurbolinksHelper {
      * @throws IOException Typically if a file cannot be found or read in.
      */
     static String getContentFromAssetFile(Context context, String filePath) throws IOException {
+        return Base64.encodeToString(readAssetFile(context, filePath), Base64.NO_WRAP);
+    }
+
+    /**
+     * <p>Reads a local asset file.</p>
+     *
+     * @param context  Any Android context.
+     * @param filePath Path relative to the assets directory.
+     * @return The raw contents of the file.
+     * @throws IOException Typically if a file cannot be found or read in.
+     */
+    static byte[] readAssetFile(Context context, String filePath) throws IOException {
         InputStream inputStream = context.getAssets().open(filePath);
-        byte[] buffer = new byte[inputStream.available()];
-        inputStream.read(buffer);
-        inputStream.close();
-        return Base64.encodeToString(buffer, Base64.NO_WRAP);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * <p>Builds the app shell page: the shell HTML asset with the Turbolinks bridge inlined at the
+     * end of its body, so the bridge starts as soon as the shell is parsed instead of being
+     * injected once the page has finished loading.</p>
+     *
+     * @param context   Any Android context.
+     * @param assetPath Path of the shell HTML, relative to the assets directory.
+     * @return The shell HTML.
+     * @throws IOException If the shell or bridge asset cannot be read.
+     */
+    static String getAppShellHtml(Context context, String assetPath) throws IOException {
+        String shell = new String(readAssetFile(context, assetPath), "UTF-8");
+        String bridge = new String(readAssetFile(context, BRIDGE_ASSET_PATH), "UTF-8");
+        return insertBridge(shell, bridge);
+    }
+
+    /**
+     * <p>Inlines the bridge script right before the last closing body tag of the shell, or at the
+     * end if there is none.</p>
+     *
+     * @param shell  The shell HTML.
+     * @param bridge The bridge Javascript.
+     * @return The shell HTML with the bridge.
+     */
+    static String insertBridge(String shell, String bridge) {
+        String script = "<script>" + bridge + "</script>";
+
+        int bodyEnd = shell.toLowerCase(Locale.US).lastIndexOf("</body>");
+        if (bodyEnd < 0) return shell + script;
+        return shell.substring(0, bodyEnd) + script + shell.substring(bodyEnd);
+    }
+
+    /**
+     * <p>Gets the origin of a location, to use as the base URL of pages loaded from data.</p>
+     *
+     * @param location An absolute http(s) location.
+     * @return The origin with a trailing slash, like {@code https://example.com/}, or null if the
+     * location isn't an absolute http(s) URL.
+     */
+    static String getOrigin(String location) {
+        try {
+            URL url = new URL(location);
+            String protocol = url.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) return null;
+
+            return protocol + "://" + url.getHost() + (url.getPort() != -1 ? ":" + url.getPort() : "") + "/";
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * <p>Gets the fully formatted Javascript that injects the Turbolinks bridge into a page. The
+     * asset is read, encoded and formatted only once per process; every session reuses the
+     * result.</p>
+     *
+     * @param context Any Android context.
+     * @return The bridge injection script.
+     * @throws IOException If the bridge asset cannot be read.
+     */
+    static String getBridgeInjectionScript(Context context) throws IOException {
+        String script = bridgeInjectionScript;
+        if (script == null) {
+            synchronized (TurbolinksHelper.class) {
+                script = bridgeInjectionScript;
+                if (script == null) {
+                    script = String.format(scriptInjectionFormat, getContentFromAssetFile(context, BRIDGE_ASSET_PATH));
+                    bridgeInjectionScript = script;
+                }
+            }
+        }
+        return script;
+    }
+
+    /**
+     * <p>Registers the bridge to run at the start of every http(s) document loaded in the
+     * webView's main frame, so it no longer has to be injected after onPageFinished. The bridge
+     * starts Turbolinks as soon as the document is parsed.</p>
+     *
+     * @param context       Any Android context.
+     * @param webView       The shared webView.
+     * @param debugCallback The debug callback.
+     * @return The handler to unregister the script with, or null if the WebView doesn't support
+     * document start scripts, in which case the bridge must be injected after onPageFinished.
+     */
+    static ScriptHandler addDocumentStartBridge(Context context, WebView webView, TurbolinksDebugCallback debugCallback) {
+        try {
+            if (!WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) return null;
+
+            String script = documentStartBridgeScript;
+            if (script == null) {
+                script = DOCUMENT_START_PREFIX + new String(readAssetFile(context, BRIDGE_ASSET_PATH), "UTF-8") + DOCUMENT_START_SUFFIX;
+                documentStartBridgeScript = script;
+            }
+            return WebViewCompat.addDocumentStartJavaScript(webView, script, Collections.singleton("*"));
+        } catch (IOException e) {
+            TurbolinksLog.e("Error reading bridge for document start: " + e.toString(), debugCallback);
+        } catch (RuntimeException e) {
+            TurbolinksLog.d("Document start scripts unavailable: " + e.toString(), debugCallback);
+        }
+        return null;
     }
 
     /**
@@ -87,8 +216,7 @@ class TurbolinksHelper {
     static void injectTurbolinksBridge(final TurbolinksSession turbolinksSession, Context context,
                                        WebView webView, TurbolinksDebugCallback debugCallback) {
         try {
-            String jsCall = String.format(scriptInjectionFormat, TurbolinksHelper.getContentFromAssetFile(context, "js/turbolinks_bridge.js"));
-            runJavascriptRaw(context, webView, jsCall, debugCallback);
+            runJavascriptRaw(context, webView, getBridgeInjectionScript(context), debugCallback);
         } catch (IOException e) {
             TurbolinksLog.e("Error injecting script file into webview: " + e.toString(), debugCallback);
         }
@@ -96,7 +224,7 @@ class TurbolinksHelper {
 
     /**
      * <p>JSONifies any arbitrary number of params and runs the the Javascript function in the
-     * webView.</p>
+     * webView. The params array is left untouched.</p>
      *
      * @param context      An activity context.
      * @param webView      The shared webView.
@@ -105,73 +233,111 @@ class TurbolinksHelper {
      */
     static void runJavascript(Context context, final WebView webView, String functionName,
                               final TurbolinksDebugCallback debugCallback, Object... params) {
-        final String fullJs;
+        StringBuilder buffer = TurbolinksJavascriptEncoder.obtainBuffer();
+        TurbolinksJavascriptEncoder.appendCall(buffer, functionName, params);
+        String fullJs = buffer.toString();
 
-        if (params != null) {
-            Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-            for (int i = 0; i < params.length; i++) {
-                params[i] = gson.toJson(params[i]);
-            }
-
-            fullJs = String.format("javascript: %s(%s);", functionName, StringUtils.join(params, ","));
-        } else {
-            fullJs = String.format("javascript: %s();", functionName);
+        if (TurbolinksLog.isLoggable(Log.DEBUG, debugCallback)) {
+            TurbolinksLog.d("Attempting to runJavascript: " + fullJs, debugCallback);
         }
+        evaluateJavascript(context, webView, new TurbolinksEvaluation<Void>(fullJs, null, null, debugCallback));
+    }
 
-        runOnMainThread(context, new Runnable() {
-            @Override
-            public void run() {
-            	if(debugCallback != null) {
-		            TurbolinksLog.d("Attempting to runJavascript: " + fullJs, debugCallback);
-	            }
-                webView.loadUrl(fullJs);
-            }
-        });
+    /**
+     * <p>Runs every call in the batch, in order, as a single Javascript evaluation in the
+     * webView.</p>
+     *
+     * @param context An activity context.
+     * @param webView The shared webView.
+     * @param batch   The ordered function calls to run.
+     */
+    static void runJavascriptBatch(Context context, final WebView webView,
+                                   final TurbolinksDebugCallback debugCallback, TurbolinksJavascriptBatch batch) {
+        if (batch == null || batch.isEmpty()) return;
+
+        StringBuilder buffer = TurbolinksJavascriptEncoder.obtainBuffer();
+        batch.appendTo(buffer);
+        String fullJs = buffer.toString();
+
+        if (TurbolinksLog.isLoggable(Log.DEBUG, debugCallback)) {
+            TurbolinksLog.d("Attempting to runJavascriptBatch: " + fullJs, debugCallback);
+        }
+        evaluateJavascript(context, webView, new TurbolinksEvaluation<Void>(fullJs, null, null, debugCallback));
     }
 
     /**
-     * <p>Runs raw Javascript that's passed in. You are responsible for encoding/escaping the
-     * function call.</p>
+     * <p>Runs raw Javascript that's passed in. You are responsible for escaping the function
+     * call. The script is run with evaluateJavascript, so it must not be URL encoded.</p>
      *
      * @param context    An activity context.
      * @param webView    The shared webView.
-     * @param javascript The raw Javascript to be executed, fully escaped/encoded in advance.
+     * @param javascript The raw Javascript to be executed, fully escaped in advance.
      */
     static void runJavascriptRaw(Context context, final WebView webView, final String javascript) {
 	    runJavascriptRaw(context, webView, javascript, null);
     }
 
     /**
-     * <p>Runs raw Javascript that's passed in. You are responsible for encoding/escaping the
-     * function call.</p>
+     * <p>Runs raw Javascript that's passed in. You are responsible for escaping the function
+     * call. The script is run with evaluateJavascript, so it must not be URL encoded.</p>
      *
      * @param context    An activity context.
      * @param webView    The shared webView.
-     * @param javascript The raw Javascript to be executed, fully escaped/encoded in advance.
+     * @param javascript The raw Javascript to be executed, fully escaped in advance.
      * @param debugCallback The callback to send error messages on
      */
     static void runJavascriptRaw(Context context, final WebView webView, final String javascript, final TurbolinksDebugCallback debugCallback) {
-        runOnMainThread(context, new Runnable() {
+        if (TurbolinksLog.isLoggable(Log.DEBUG, debugCallback)) {
+            TurbolinksLog.d("Running Javascript: " + javascript, debugCallback);
+        }
+        evaluateJavascript(context, webView, new TurbolinksEvaluation<Void>(javascript, null, null, debugCallback));
+    }
+
+    /**
+     * <p>Runs the evaluation's script in the webView with evaluateJavascript, on the main
+     * thread. Unlike loadUrl("javascript:..."), this is not treated as a navigation, has no URL
+     * length limit and can return a value.</p>
+     *
+     * @param context    An activity context.
+     * @param webView    The shared webView.
+     * @param evaluation The evaluation holding the script and result callback.
+     */
+    static void evaluateJavascript(Context context, final WebView webView, final TurbolinksEvaluation<?> evaluation) {
+        runOnMainThread(context, "evaluateJavascript", new Runnable() {
             @Override
             public void run() {
-            	if(debugCallback != null){
-		            TurbolinksLog.d("Running Javascript: " + javascript, debugCallback);
-	            }
-                webView.loadUrl("javascript:" + javascript);
+                if (evaluation.isCancelled()) return;
+
+                if (webView == null) {
+                    evaluation.fail(new IllegalStateException("The webView is no longer available."));
+                    return;
+                }
+                webView.evaluateJavascript(evaluation.getScript(), evaluation.start());
             }
         });
     }
 
     /**
-     * <p>Executes a given runnable on the main thread.</p>
+     * <p>Executes a given runnable on the main thread. Runs inline if already on the main thread
+     * and nothing posted earlier is still waiting.</p>
      *
      * @param context  An activity context.
      * @param runnable A runnable to execute on the main thread.
      */
     static void runOnMainThread(Context context, Runnable runnable) {
-	    // TODO: 4/17/20 May need callback method for invalid or no longer valid context
-        Handler handler = new Handler(context.getMainLooper());
-        handler.post(runnable);
+        runOnMainThread(context, null, runnable);
+    }
+
+    /**
+     * <p>Executes a given runnable on the main thread. Runs inline if already on the main thread
+     * and nothing posted earlier is still waiting.</p>
+     *
+     * @param context  An activity context.
+     * @param callSite Name used to group post-to-execution timings, may be null.
+     * @param runnable A runnable to execute on the main thread.
+     */
+    static void runOnMainThread(Context context, String callSite, Runnable runnable) {
+        TurbolinksMainThreadExecutor.execute(callSite, runnable);
     }
 
     // ---------------------------------------------------
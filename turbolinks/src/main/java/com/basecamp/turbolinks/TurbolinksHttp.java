@@ -0,0 +1,205 @@
+package com.basecamp.turbolinks;
+
+import android.text.TextUtils;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Native HTTP plumbing shared by the response cache and the prefetcher: requests are sent with
+ * the WebView's cookies and the session's custom headers, and responses are handed back to the
+ * WebView the way Turbolinks expects them.</p>
+ */
+final class TurbolinksHttp {
+    static final String TURBOLINKS_REFERRER_HEADER = "Turbolinks-Referrer";
+    static final String TURBOLINKS_LOCATION_HEADER = "Turbolinks-Location";
+    static final String TURBOLINKS_ACCEPT = "text/html, application/xhtml+xml";
+    private static final String DEFAULT_MIME_TYPE = "text/html";
+    private static final String DEFAULT_ENCODING = "utf-8";
+    private static final int TIMEOUT_MILLIS = 30 * 1000;
+    private static final List<String> SKIPPED_REQUEST_HEADERS = Arrays.asList(
+            "accept-encoding", "connection", "host", "if-none-match", "if-modified-since");
+    private static final List<String> SKIPPED_RESPONSE_HEADERS = Arrays.asList(
+            "set-cookie", "content-encoding", "content-length", "transfer-encoding", "connection");
+
+    private TurbolinksHttp() {}
+
+    /**
+     * <p>Opens a GET request that follows redirects and carries the WebView's cookies.</p>
+     *
+     * @param url            The request URL.
+     * @param requestHeaders Headers to copy from the WebView's request, may be null.
+     * @param customHeaders  The session's custom headers, may be null.
+     * @param etag           Validator for If-None-Match, may be null.
+     * @param lastModified   Validator for If-Modified-Since, may be null.
+     * @return The unconnected request.
+     * @throws IOException If the URL can't be opened.
+     */
+    static HttpURLConnection openConnection(String url, Map<String, String> requestHeaders, Map<String, String> customHeaders,
+                                            String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setUseCaches(false);
+        connection.setInstanceFollowRedirects(true);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (!SKIPPED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+        }
+        if (customHeaders != null) {
+            for (Map.Entry<String, String> header : customHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        String cookie = CookieManager.getInstance().getCookie(url);
+        if (!TextUtils.isEmpty(cookie)) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+
+        if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+        if (lastModified != null) connection.setRequestProperty("If-Modified-Since", lastModified);
+
+        return connection;
+    }
+
+    /**
+     * <p>Writes the cookies set by a native response back to the WebView's cookie store.</p>
+     *
+     * @param url        The request URL.
+     * @param connection The finished request.
+     */
+    static void storeCookies(String url, HttpURLConnection connection) {
+        List<String> cookies = getHeaderValues(connection.getHeaderFields(), "Set-Cookie");
+        if (cookies == null) return;
+
+        CookieManager cookieManager = CookieManager.getInstance();
+        for (String cookie : cookies) {
+            cookieManager.setCookie(url, cookie);
+        }
+    }
+
+    /**
+     * <p>Fingerprints the cookies the WebView would send to a URL, so a response stored for one
+     * user is never served to another.</p>
+     *
+     * @param url The request URL.
+     * @return A hash of the cookies, the same for every URL without cookies.
+     */
+    static String cookieFingerprint(String url) {
+        String cookie = CookieManager.getInstance().getCookie(url);
+        return TurbolinksResponseCache.hash(cookie != null ? cookie : "");
+    }
+
+    /**
+     * <p>Whether a status code can be handed to the WebView. WebResourceResponse rejects
+     * redirects, which the WebView has to follow itself, and anything outside 100-599.</p>
+     *
+     * @param statusCode The HTTP status code.
+     * @return True if {@link #buildResponse} accepts it.
+     */
+    static boolean isInterceptableStatus(int statusCode) {
+        return (statusCode >= 100 && statusCode < 300) || (statusCode >= 400 && statusCode < 600);
+    }
+
+    /**
+     * <p>Builds the response handed to the WebView. When the response came from a different URL
+     * than requested, the Turbolinks-Location header tells Turbolinks about the redirect.</p>
+     *
+     * @param url          The request URL.
+     * @param location     The URL the response came from, may be null.
+     * @param contentType  The Content-Type of the response, may be null.
+     * @param statusCode   The HTTP status code.
+     * @param reasonPhrase The HTTP reason phrase, may be null.
+     * @param headerFields Response headers to pass on, may be null.
+     * @param body         The response body.
+     * @return The response for {@code WebViewClient.shouldInterceptRequest}, or null if the
+     * status code can't be intercepted and the WebView has to make the request itself.
+     */
+    static WebResourceResponse buildResponse(String url, String location, String contentType, int statusCode,
+                                             String reasonPhrase, Map<String, List<String>> headerFields, byte[] body) {
+        if (!isInterceptableStatus(statusCode)) return null;
+
+        String mimeType = DEFAULT_MIME_TYPE;
+        String encoding = DEFAULT_ENCODING;
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.toLowerCase(Locale.US).startsWith("charset=")) {
+                    encoding = part.substring("charset=".length()).replace("\"", "");
+                }
+            }
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (headerFields != null) {
+            for (Map.Entry<String, List<String>> field : headerFields.entrySet()) {
+                String name = field.getKey();
+                if (name == null || field.getValue() == null || field.getValue().isEmpty()) continue;
+                if (SKIPPED_RESPONSE_HEADERS.contains(name.toLowerCase(Locale.US))) continue;
+                headers.put(name, field.getValue().get(0));
+            }
+        }
+
+        if (location != null && !TurbolinksResponseCache.normalizeUrl(location).equals(TurbolinksResponseCache.normalizeUrl(url))) {
+            headers.put(TURBOLINKS_LOCATION_HEADER, location);
+        }
+
+        return new WebResourceResponse(mimeType, encoding, statusCode,
+                TextUtils.isEmpty(reasonPhrase) ? "OK" : reasonPhrase.trim(), headers, new ByteArrayInputStream(body));
+    }
+
+    static String getHeader(Map<String, String> headers, String name) {
+        if (headers == null) return null;
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    static List<String> getHeaderValues(Map<String, List<String>> headerFields, String name) {
+        if (headerFields == null) return null;
+
+        for (Map.Entry<String, List<String>> field : headerFields.entrySet()) {
+            if (name.equalsIgnoreCase(field.getKey())) {
+                return field.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>Reads and closes the stream.</p>
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
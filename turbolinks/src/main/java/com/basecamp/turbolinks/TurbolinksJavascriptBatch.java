@@ -0,0 +1,62 @@
+package com.basecamp.turbolinks;
+
+import java.util.ArrayList;
+
+/**
+ * <p>An ordered list of Javascript function calls that is sent to the webView as a single script
+ * evaluation, instead of one main thread post and one evaluation per call. Each call runs in its
+ * own try block, so a call that throws doesn't keep the calls after it from running; the error is
+ * logged to the page's console.</p>
+ *
+ * <pre>
+ * turbolinksSession.runJavascriptBatch(new TurbolinksJavascriptBatch()
+ *         .add("myApp.setTitle", title)
+ *         .add("myApp.scrollTo", 0, 120));
+ * </pre>
+ */
+public class TurbolinksJavascriptBatch {
+    private final ArrayList<String> functionNames = new ArrayList<>(4);
+    private final ArrayList<Object[]> functionParams = new ArrayList<>(4);
+
+    /**
+     * <p>Appends a function call to the end of the batch. Params are JSONified the same way as
+     * {@link TurbolinksSession#runJavascript(String, TurbolinksDebugCallback, Object...)}.</p>
+     *
+     * @param functionName The name of the function, without any parenthesis or params.
+     * @param params       A comma delimited list of params.
+     * @return The batch to continue the chained calls.
+     */
+    public TurbolinksJavascriptBatch add(String functionName, Object... params) {
+        functionNames.add(functionName);
+        functionParams.add(params);
+        return this;
+    }
+
+    /**
+     * @return The number of function calls in the batch.
+     */
+    public int size() {
+        return functionNames.size();
+    }
+
+    /**
+     * @return True if the batch has no function calls.
+     */
+    public boolean isEmpty() {
+        return functionNames.isEmpty();
+    }
+
+    /**
+     * <p>Appends every call in the batch, in order and each isolated from the others, to the given
+     * buffer.</p>
+     *
+     * @param buffer The buffer to write into.
+     */
+    void appendTo(StringBuilder buffer) {
+        for (int i = 0; i < functionNames.size(); i++) {
+            buffer.append("try{");
+            TurbolinksJavascriptEncoder.appendCall(buffer, functionNames.get(i), functionParams.get(i));
+            buffer.append("}catch(e){console.error(e)}");
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.basecamp.turbolinks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * <p>Builds Javascript function calls for the bridge without creating a Gson instance per call.
+ * Strings, numbers, booleans and null are written directly into a per-thread buffer that is reused
+ * between calls; any other value falls back to a shared Gson instance.</p>
+ *
+ * <p>The output matches what Gson produces with HTML escaping disabled, so a value encodes the same
+ * way no matter which path it takes.</p>
+ */
+final class TurbolinksJavascriptEncoder {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        }
+    };
+
+    private TurbolinksJavascriptEncoder() {}
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Gets the calling thread's buffer, emptied and ready for use. The buffer is only valid
+     * until the next call on the same thread.</p>
+     *
+     * @return An empty, reused StringBuilder.
+     */
+    static StringBuilder obtainBuffer() {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+            // Don't hold on to the memory of an unusually large call forever
+            buffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * <p>Encodes a complete function call, e.g. {@code fn("a",1);}.</p>
+     *
+     * @param functionName The Javascript function name only (no parenthesis or parameters).
+     * @param params       The parameter values, may be null.
+     * @return The encoded function call.
+     */
+    static String encodeCall(String functionName, Object... params) {
+        StringBuilder buffer = obtainBuffer();
+        appendCall(buffer, functionName, params);
+        return buffer.toString();
+    }
+
+    /**
+     * <p>Appends a complete function call, e.g. {@code fn("a",1);}, to the given buffer.</p>
+     *
+     * @param buffer       The buffer to write into.
+     * @param functionName The Javascript function name only (no parenthesis or parameters).
+     * @param params       The parameter values, may be null.
+     */
+    static void appendCall(StringBuilder buffer, String functionName, Object[] params) {
+        buffer.append(functionName).append('(');
+        if (params != null) {
+            for (int i = 0; i < params.length; i++) {
+                if (i > 0) buffer.append(',');
+                appendValue(buffer, params[i]);
+            }
+        }
+        buffer.append(");");
+    }
+
+    /**
+     * <p>Appends a single value as a Javascript literal.</p>
+     *
+     * @param buffer The buffer to write into.
+     * @param value  The value to encode.
+     */
+    static void appendValue(StringBuilder buffer, Object value) {
+        if (value == null) {
+            buffer.append("null");
+        } else if (value instanceof String) {
+            appendString(buffer, (String) value);
+        } else if (value instanceof Boolean) {
+            buffer.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            buffer.append(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                // Gson rejects non-finite numbers outright; JSON has no literal for them
+                buffer.append("null");
+            } else if (value instanceof Float) {
+                buffer.append(((Float) value).floatValue());
+            } else {
+                buffer.append(number);
+            }
+        } else if (value instanceof Character) {
+            appendString(buffer, value.toString());
+        } else {
+            buffer.append(GSON.toJson(value));
+        }
+    }
+
+    /**
+     * <p>Appends a quoted, escaped Javascript string literal.</p>
+     *
+     * @param buffer The buffer to write into.
+     * @param value  The string to encode.
+     */
+    static void appendString(StringBuilder buffer, String value) {
+        buffer.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                case 0x2028:
+                case 0x2029:
+                    appendUnicodeEscape(buffer, c);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendUnicodeEscape(buffer, c);
+                    } else {
+                        buffer.append(c);
+                    }
+                    break;
+            }
+        }
+        buffer.append('"');
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static void appendUnicodeEscape(StringBuilder buffer, char c) {
+        buffer.append("\\u")
+                .append(HEX_DIGITS[(c >> 12) & 0xf])
+                .append(HEX_DIGITS[(c >> 8) & 0xf])
+                .append(HEX_DIGITS[(c >> 4) & 0xf])
+                .append(HEX_DIGITS[c & 0xf]);
+    }
+}
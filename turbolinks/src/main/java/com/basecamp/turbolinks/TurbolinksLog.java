@@ -23,6 +23,20 @@ class TurbolinksLog {
         return debugLoggingEnabled;
     }
 
+    /**
+     * <p>Returns whether a statement at the given level would reach logcat or the callback, so
+     * callers can skip building messages that nobody receives.</p>
+     *
+     * @param logLevel Log level of the statement.
+     * @param callback The callback the statement would be sent to, may be null.
+     */
+    static boolean isLoggable(int logLevel, TurbolinksDebugCallback callback) {
+        if (callback instanceof TurbolinksLogger) {
+            return ((TurbolinksLogger) callback).isLoggable(logLevel);
+        }
+        return logLevel >= Log.ERROR || debugLoggingEnabled || callback != null;
+    }
+
     /**
      * <p>Send a DEBUG level log statement with the default tag</p>
      *
@@ -79,6 +93,9 @@ class TurbolinksLog {
      */
     private static void log(int logLevel, String tag, String msg,
                             TurbolinksDebugCallback callback) {
+        if (callback instanceof TurbolinksLogger && !((TurbolinksLogger) callback).isLoggable(logLevel)) {
+            return;
+        }
         switch (logLevel) {
             case Log.DEBUG:
                 if (debugLoggingEnabled) {
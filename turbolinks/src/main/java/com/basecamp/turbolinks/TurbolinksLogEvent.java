@@ -0,0 +1,73 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Typed codes for the structured log statements on the visit path. Each event has a stable
+ * numeric code and a message template whose {@code {}} placeholders are only filled in when the
+ * statement is actually logged.</p>
+ *
+ * @see TurbolinksLogEventCallback
+ */
+public enum TurbolinksLogEvent {
+    VISIT(100, "visit called: {}"),
+    VISIT_COLD_BOOT(101, "Cold booting: {}"),
+    VISIT_WITH_TURBOLINKS(102, "Visiting with Turbolinks: {}"),
+    VISIT_LOCATION_WITH_ACTION(103, "visitLocationWithAction: {}, action: {}"),
+    VISIT_PROPOSED(110, "visitProposedToLocationWithAction: {}, action: {}"),
+    VISIT_STARTED(111, "visitStarted: {}, cached snapshot: {}"),
+    VISIT_REQUEST_COMPLETED(112, "visitRequestCompleted: {}"),
+    VISIT_REQUEST_FAILED(113, "visitRequestFailedWithStatusCode: {}, status code: {}"),
+    VISIT_RENDERED(114, "visitRendered: {}"),
+    VISIT_COMPLETED(115, "visitCompleted: {}"),
+    PAGE_INVALIDATED(116, "pageInvalidated"),
+    PROGRESS_HIDDEN(120, "Hiding progress view for visit: {}, current visit: {}"),
+    TURBOLINKS_READY(130, "setTurbolinksIsReady: {}"),
+    RESPONSE_CACHE_STATS(150, "Response cache {}");
+
+    private static final String PLACEHOLDER = "{}";
+
+    private final int code;
+    private final String template;
+
+    TurbolinksLogEvent(int code, String template) {
+        this.code = code;
+        this.template = template;
+    }
+
+    /**
+     * @return The stable numeric code of the event.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return The message template, with {@code {}} placeholders for the arguments.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * <p>Fills the placeholders of the template with the arguments, in order. Placeholders
+     * without an argument are left as they are.</p>
+     *
+     * @param first  First argument, may be null.
+     * @param second Second argument, may be null.
+     * @return The formatted message.
+     */
+    String format(Object first, Object second) {
+        int firstIndex = template.indexOf(PLACEHOLDER);
+        if (firstIndex < 0) return template;
+
+        StringBuilder sb = new StringBuilder(template.length() + 32);
+        sb.append(template, 0, firstIndex).append(first);
+
+        int rest = firstIndex + PLACEHOLDER.length();
+        int secondIndex = template.indexOf(PLACEHOLDER, rest);
+        if (secondIndex >= 0) {
+            sb.append(template, rest, secondIndex).append(second);
+            rest = secondIndex + PLACEHOLDER.length();
+        }
+        return sb.append(template, rest, template.length()).toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>A {@link TurbolinksDebugCallback} that also receives the typed event of structured log
+ * statements, so they can be counted or filtered without parsing messages. Statements that aren't
+ * structured only arrive through {@link #logEvent(int, String, String)}.</p>
+ */
+public interface TurbolinksLogEventCallback extends TurbolinksDebugCallback {
+
+	/**
+	 * Structured log event callback, called in addition to
+	 * {@link #logEvent(int, String, String)}.
+	 * @param logLevel The loglevel (IE {@link android.util.Log#DEBUG})
+	 * @param event The typed event
+	 * @param msg The formatted message
+	 */
+	void onLogEvent(int logLevel, TurbolinksLogEvent event, String msg);
+}
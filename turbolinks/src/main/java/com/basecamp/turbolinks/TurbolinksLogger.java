@@ -0,0 +1,113 @@
+package com.basecamp.turbolinks;
+
+import android.util.Log;
+
+/**
+ * <p>Per-session logger. It is the {@link TurbolinksDebugCallback} the session hands to its
+ * helpers and views, forwarding to the app's callback, and it adds a minimum log level and
+ * parameterized statements for the visit path.</p>
+ *
+ * <p>Parameterized statements check the level before anything else, so while a level is
+ * disabled they neither format a message nor call {@code toString()} on their arguments.</p>
+ */
+final class TurbolinksLogger implements TurbolinksDebugCallback {
+    private static final String TAG = "TurbolinksLog";
+
+    private volatile TurbolinksDebugCallback callback;
+    private volatile int minLevel = Log.DEBUG;
+
+    // ---------------------------------------------------
+    // Configuration
+    // ---------------------------------------------------
+
+    void setCallback(TurbolinksDebugCallback callback) {
+        this.callback = callback;
+    }
+
+    TurbolinksDebugCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * @param minLevel The lowest level logged, one of the {@link Log} levels.
+     */
+    void setMinLevel(int minLevel) {
+        if (minLevel < Log.VERBOSE || minLevel > Log.ASSERT) {
+            throw new IllegalArgumentException("Log level must be one of the android.util.Log levels.");
+        }
+        this.minLevel = minLevel;
+    }
+
+    int getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * <p>A statement is logged if its level is at least the minimum level and something will
+     * receive it: logcat (errors always, debug when debug logging is enabled) or the callback.</p>
+     *
+     * @param level One of the {@link Log} levels.
+     * @return True if a statement at this level would be logged.
+     */
+    boolean isLoggable(int level) {
+        return level >= minLevel
+                && (level >= Log.ERROR || TurbolinksLog.getDebugLoggingEnabled() || callback != null);
+    }
+
+    // ---------------------------------------------------
+    // Parameterized statements
+    // ---------------------------------------------------
+
+    void d(TurbolinksLogEvent event) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, event, null, null);
+    }
+
+    void d(TurbolinksLogEvent event, Object first) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, event, first, null);
+    }
+
+    void d(TurbolinksLogEvent event, Object first, Object second) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, event, first, second);
+    }
+
+    /**
+     * Avoids boxing the int while debug logging is disabled.
+     */
+    void d(TurbolinksLogEvent event, Object first, int second) {
+        if (isLoggable(Log.DEBUG)) log(Log.DEBUG, event, first, second);
+    }
+
+    void e(TurbolinksLogEvent event, Object first) {
+        if (isLoggable(Log.ERROR)) log(Log.ERROR, event, first, null);
+    }
+
+    // ---------------------------------------------------
+    // TurbolinksDebugCallback
+    // ---------------------------------------------------
+
+    @Override
+    public void logEvent(int logLevel, String tag, String msg) {
+        TurbolinksDebugCallback callback = this.callback;
+        if (callback != null && logLevel >= minLevel) {
+            callback.logEvent(logLevel, tag, msg);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void log(int level, TurbolinksLogEvent event, Object first, Object second) {
+        String msg = event.format(first, second);
+        if (level >= Log.ERROR) {
+            TurbolinksLog.e(msg, this);
+        } else {
+            TurbolinksLog.d(msg, this);
+        }
+
+        TurbolinksDebugCallback callback = this.callback;
+        if (callback instanceof TurbolinksLogEventCallback) {
+            ((TurbolinksLogEventCallback) callback).onLogEvent(level, event, msg);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.basecamp.turbolinks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs work on the main thread through a single shared Handler.</p>
+ *
+ * <ul>
+ * <li>{@link #execute(String, Runnable)} runs inline when called on the main thread and nothing
+ * posted through this executor is still waiting, so order between calls is kept.</li>
+ * <li>{@link #post(String, Runnable)} always posts, behind anything already queued.</li>
+ * </ul>
+ *
+ * <p>When timing is enabled, the delay between posting and running is recorded per call site.</p>
+ */
+final class TurbolinksMainThreadExecutor {
+    private static final String DEFAULT_CALL_SITE = "runOnMainThread";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final AtomicInteger pendingPosts = new AtomicInteger();
+    private static final ConcurrentHashMap<String, TurbolinksMainThreadTiming> timings = new ConcurrentHashMap<>();
+    private static volatile boolean timingEnabled;
+
+    private TurbolinksMainThreadExecutor() {}
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @return True if the caller is on the main thread.
+     */
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * <p>Runs the runnable inline if the caller is on the main thread and no earlier post is still
+     * waiting, otherwise posts it.</p>
+     *
+     * @param callSite Name used to group timings, may be null.
+     * @param runnable The work to run on the main thread.
+     */
+    static void execute(String callSite, Runnable runnable) {
+        if (isMainThread() && pendingPosts.get() == 0) {
+            runnable.run();
+        } else {
+            post(callSite, runnable);
+        }
+    }
+
+    /**
+     * <p>Posts the runnable to the end of the main thread queue.</p>
+     *
+     * @param callSite Name used to group timings, may be null.
+     * @param runnable The work to run on the main thread.
+     */
+    static void post(String callSite, final Runnable runnable) {
+        final String site = callSite != null ? callSite : DEFAULT_CALL_SITE;
+        final long postTime = timingEnabled ? SystemClock.uptimeMillis() : -1;
+
+        pendingPosts.incrementAndGet();
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                pendingPosts.decrementAndGet();
+                if (postTime >= 0) {
+                    recordDelay(site, SystemClock.uptimeMillis() - postTime);
+                }
+                runnable.run();
+            }
+        });
+    }
+
+    /**
+     * <p>Enables or disables recording of post-to-execution delays. Disabling also clears what
+     * has been recorded so far.</p>
+     *
+     * @param enabled True, to enable.
+     */
+    static void setTimingEnabled(boolean enabled) {
+        timingEnabled = enabled;
+        if (!enabled) {
+            timings.clear();
+        }
+    }
+
+    /**
+     * @return A snapshot of the delays recorded per call site.
+     */
+    static List<TurbolinksMainThreadTiming> getTimings() {
+        List<TurbolinksMainThreadTiming> snapshot = new ArrayList<>(timings.size());
+        for (TurbolinksMainThreadTiming timing : timings.values()) {
+            snapshot.add(timing.copy());
+        }
+        return snapshot;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private static void recordDelay(String callSite, long delayMillis) {
+        TurbolinksMainThreadTiming timing = timings.get(callSite);
+        if (timing == null) {
+            TurbolinksMainThreadTiming newTiming = new TurbolinksMainThreadTiming(callSite);
+            timing = timings.putIfAbsent(callSite, newTiming);
+            if (timing == null) {
+                timing = newTiming;
+            }
+        }
+        timing.record(delayMillis);
+    }
+}
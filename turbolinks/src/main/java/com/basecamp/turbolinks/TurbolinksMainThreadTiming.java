@@ -0,0 +1,74 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Post-to-execution delays recorded for one call site that hands work to the main thread.
+ * Recording is enabled with {@link TurbolinksSession#setMainThreadTimingEnabled(boolean)} and
+ * read with {@link TurbolinksSession#getMainThreadTimings()}.</p>
+ */
+public class TurbolinksMainThreadTiming {
+    private final String callSite;
+    private long count;
+    private long totalDelayMillis;
+    private long maxDelayMillis;
+
+    TurbolinksMainThreadTiming(String callSite) {
+        this.callSite = callSite;
+    }
+
+    /**
+     * @return The name of the call site, e.g. "visitCompleted".
+     */
+    public String getCallSite() {
+        return callSite;
+    }
+
+    /**
+     * @return The number of posts recorded.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of all recorded delays, in milliseconds.
+     */
+    public synchronized long getTotalDelayMillis() {
+        return totalDelayMillis;
+    }
+
+    /**
+     * @return The longest recorded delay, in milliseconds.
+     */
+    public synchronized long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @return The average recorded delay, in milliseconds.
+     */
+    public synchronized float getAverageDelayMillis() {
+        return count == 0 ? 0 : (float) totalDelayMillis / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return callSite + ": count=" + count + ", avg=" + getAverageDelayMillis()
+                + " ms, max=" + maxDelayMillis + " ms";
+    }
+
+    synchronized void record(long delayMillis) {
+        count++;
+        totalDelayMillis += delayMillis;
+        if (delayMillis > maxDelayMillis) {
+            maxDelayMillis = delayMillis;
+        }
+    }
+
+    synchronized TurbolinksMainThreadTiming copy() {
+        TurbolinksMainThreadTiming copy = new TurbolinksMainThreadTiming(callSite);
+        copy.count = count;
+        copy.totalDelayMillis = totalDelayMillis;
+        copy.maxDelayMillis = maxDelayMillis;
+        return copy;
+    }
+}
@@ -0,0 +1,216 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.webkit.WebView;
+
+/**
+ * <p>Sheds a session's memory when the system asks the app to trim it. While the app is
+ * running, each level also applies the steps of the levels below it:</p>
+ *
+ * <ul>
+ *     <li>{@code TRIM_MEMORY_RUNNING_MODERATE}: drop prefetched responses.</li>
+ *     <li>{@code TRIM_MEMORY_RUNNING_LOW}: halve the screenshot bitmap pool.</li>
+ *     <li>{@code TRIM_MEMORY_RUNNING_CRITICAL}: empty the bitmap pool, destroy idle pooled
+ *     WebViews and clear Turbolinks' snapshot cache in the page.</li>
+ * </ul>
+ *
+ * <p>Once the UI is hidden, the session only pauses the WebView and its timers until an
+ * activity of the app is resumed ({@code TRIM_MEMORY_UI_HIDDEN}). In the background it also
+ * drops prefetched responses and the bitmap pool ({@code TRIM_MEMORY_BACKGROUND}), then idle
+ * pooled WebViews ({@code TRIM_MEMORY_MODERATE} and above). Turbolinks' snapshot cache is kept
+ * in the background, so going back is still instant when the user returns.</p>
+ *
+ * <p>Every step that freed something is logged to the session's debug callback. Screenshots
+ * on views are shed by the views themselves.</p>
+ */
+final class TurbolinksMemoryTrimmer implements ComponentCallbacks2 {
+    private static final String SNAPSHOT_CACHE_CLEAR =
+            "if (window.Turbolinks && Turbolinks.clearCache) Turbolinks.clearCache()";
+
+    private final TurbolinksSession session;
+    private boolean registered;
+    private boolean webViewPaused;
+
+    TurbolinksMemoryTrimmer(TurbolinksSession session) {
+        this.session = session;
+    }
+
+    // ---------------------------------------------------
+    // ComponentCallbacks2
+    // ---------------------------------------------------
+
+    @Override
+    public void onTrimMemory(int level) {
+        TurbolinksLog.d("onTrimMemory, level == " + level, session.logger);
+
+        switch (level) {
+            case TRIM_MEMORY_RUNNING_MODERATE:
+            case TRIM_MEMORY_RUNNING_LOW:
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+                trimWhileRunning(level);
+                break;
+            case TRIM_MEMORY_UI_HIDDEN:
+                pauseWebView();
+                break;
+            default:
+                if (level >= TRIM_MEMORY_BACKGROUND) {
+                    trimInBackground(level);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Starts listening for trim requests, unless already listening. Called when the session
+     * is given a view, so sessions that were never shown aren't kept alive by the application
+     * context.</p>
+     */
+    void register() {
+        if (registered) return;
+        registered = true;
+        session.applicationContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * <p>Resumes the WebView if it was paused by a trim. Called when the session is shown again,
+     * and when any activity of the app resumes.</p>
+     */
+    void resumeWebView() {
+        if (!webViewPaused) return;
+        webViewPaused = false;
+        unregisterResumeCallback();
+
+        WebView webView = session.getWebView();
+        if (webView != null) {
+            webView.onResume();
+            webView.resumeTimers();
+        }
+        TurbolinksLog.d("Resumed WebView after trim", session.logger);
+    }
+
+    /**
+     * <p>Stops listening for trim requests and activity resumes. The WebView is left as it
+     * is.</p>
+     */
+    void release() {
+        if (registered) {
+            registered = false;
+            session.applicationContext.unregisterComponentCallbacks(this);
+        }
+        unregisterResumeCallback();
+        webViewPaused = false;
+    }
+
+    boolean isWebViewPaused() {
+        return webViewPaused;
+    }
+
+    boolean isRegistered() {
+        return registered;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void trimWhileRunning(int level) {
+        report("prefetched responses", session.prefetcher.clear());
+
+        TurbolinksBitmapPool bitmapPool = TurbolinksBitmapPool.getInstance();
+        if (level == TRIM_MEMORY_RUNNING_LOW) {
+            report("screenshot bitmap pool", bitmapPool.trimToSize(bitmapPool.getSizeBytes() / 2));
+        } else if (level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            report("screenshot bitmap pool", bitmapPool.clear());
+            trimWebViewPool();
+
+            WebView webView = session.getWebView();
+            if (webView != null && session.turbolinksIsReady()) {
+                TurbolinksHelper.runJavascriptRaw(session.applicationContext, webView, SNAPSHOT_CACHE_CLEAR, session.logger);
+                TurbolinksLog.d("Trimmed Turbolinks snapshot cache (size unknown)", session.logger);
+            }
+        }
+    }
+
+    private void trimInBackground(int level) {
+        pauseWebView();
+        report("prefetched responses", session.prefetcher.clear());
+        report("screenshot bitmap pool", TurbolinksBitmapPool.getInstance().clear());
+        if (level >= TRIM_MEMORY_MODERATE) {
+            trimWebViewPool();
+        }
+    }
+
+    private void trimWebViewPool() {
+        int destroyed = TurbolinksWebViewPool.getInstance(session.applicationContext).trim();
+        report("idle pooled WebViews", destroyed * TurbolinksSessionManager.WEBVIEW_COST_BYTES);
+    }
+
+    private void report(String what, long freedBytes) {
+        if (freedBytes > 0) {
+            TurbolinksLog.d("Trimmed " + what + ", freed " + freedBytes + " bytes", session.logger);
+        }
+    }
+
+    /**
+     * Pausing timers applies to every WebView of the process, which is fine once the UI is hidden.
+     */
+    private void pauseWebView() {
+        WebView webView = session.getWebView();
+        if (webView == null || webViewPaused) return;
+        webViewPaused = true;
+
+        webView.onPause();
+        webView.pauseTimers();
+        if (session.applicationContext instanceof Application) {
+            ((Application) session.applicationContext).registerActivityLifecycleCallbacks(resumeCallback);
+        }
+        TurbolinksLog.d("Paused WebView and timers while the UI is hidden", session.logger);
+    }
+
+    private void unregisterResumeCallback() {
+        if (session.applicationContext instanceof Application) {
+            ((Application) session.applicationContext).unregisterActivityLifecycleCallbacks(resumeCallback);
+        }
+    }
+
+    private final Application.ActivityLifecycleCallbacks resumeCallback = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityResumed(Activity activity) {
+            resumeWebView();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {}
+    };
+}
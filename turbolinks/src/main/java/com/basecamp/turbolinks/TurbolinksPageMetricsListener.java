@@ -0,0 +1,18 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Receives the metrics the bridge reports whenever the page's height, scroll position or
+ * title change. Set with
+ * {@link TurbolinksSession#setPageMetricsListener(TurbolinksPageMetricsListener)}.</p>
+ */
+public interface TurbolinksPageMetricsListener {
+    /**
+     * <p>Called on the main thread, at most once per animation frame of the page.</p>
+     *
+     * @param pageHeight The height of the document, in pixels.
+     * @param scrollX    The horizontal scroll position of the page, in pixels.
+     * @param scrollY    The vertical scroll position of the page, in pixels.
+     * @param title      The document title, never null.
+     */
+    void onPageMetricsChanged(int pageHeight, int scrollX, int scrollY, String title);
+}
@@ -0,0 +1,422 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A process-wide disk store of downscaled screenshots, one per visited location and screen
+ * orientation. After process death, a cold visit shows the stored screenshot of its location
+ * right away, as a placeholder until the page has rendered.</p>
+ *
+ * <p>The store is opt-in, see {@link TurbolinksSession#setPlaceholdersEnabled(boolean)}.
+ * Screenshots are compressed and written on a background thread. The store holds at most
+ * {@link #getMaxSizeBytes()} bytes, evicting the least recently used placeholders first, and
+ * doesn't show placeholders older than {@link #getMaxAgeMillis()}.</p>
+ */
+public class TurbolinksPlaceholderStore {
+    private static final String STORE_DIRECTORY = "turbolinks_placeholders";
+    private static final String IMAGE_SUFFIX = ".jpg";
+    private static final int JPEG_QUALITY = 70;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+    private static final long DEFAULT_MAX_SIZE_BYTES = 5 * 1024 * 1024;
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static final long RECAPTURE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_RECENT_WRITES = 64;
+
+    private static volatile TurbolinksPlaceholderStore instance;
+
+    private final File directory;
+    private final Executor executor;
+    // Least recently used first, key -> bytes on disk
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Screenshots waiting to be written, only the newest per key
+    private final HashMap<String, Bitmap> pendingWrites = new HashMap<>();
+    // Guarded by pendingWrites: key -> elapsed realtime of the last write in this process
+    private final LinkedHashMap<String, Long> recentWrites = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_RECENT_WRITES;
+        }
+    };
+    private boolean indexLoaded;
+    private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private long sizeBytes;
+
+    /**
+     * <p>Receives a placeholder read from disk, on the main thread.</p>
+     */
+    interface Callback {
+        void onPlaceholderLoaded(Bitmap placeholder);
+    }
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * Package constructor, use {@link #getInstance(Context)}.
+     *
+     * @param directory The directory the placeholders are stored in.
+     * @param executor  Runs the disk reads and writes.
+     */
+    TurbolinksPlaceholderStore(File directory, Executor executor) {
+        this.directory = directory;
+        this.executor = executor;
+    }
+
+    /**
+     * <p>Returns the process-wide store, kept in the app's cache directory.</p>
+     *
+     * @param context Any Android context.
+     * @return The shared store, guaranteed to not be null.
+     */
+    public static TurbolinksPlaceholderStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TurbolinksPlaceholderStore.class) {
+                if (instance == null) {
+                    instance = new TurbolinksPlaceholderStore(
+                            new File(context.getApplicationContext().getCacheDir(), STORE_DIRECTORY),
+                            newBackgroundExecutor());
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets how many bytes of placeholders the store may keep on disk, evicting placeholders if
+     * it already holds more. The default is 5 MB.</p>
+     *
+     * @param maxSizeBytes The byte cap.
+     */
+    public synchronized void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = Math.max(0, maxSizeBytes);
+        trimToSize(this.maxSizeBytes);
+    }
+
+    /**
+     * @return The byte cap of the store.
+     */
+    public synchronized long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    /**
+     * <p>Sets how long after it was captured a placeholder may still be shown. Older placeholders
+     * are deleted when they're next requested. The default is one day.</p>
+     *
+     * @param maxAgeMillis The maximum age in milliseconds.
+     */
+    public synchronized void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+    }
+
+    /**
+     * @return The maximum age of a placeholder that is shown, in milliseconds.
+     */
+    public synchronized long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @return The bytes of the placeholders currently stored on disk.
+     */
+    public synchronized long getSizeBytes() {
+        loadIndex();
+        return sizeBytes;
+    }
+
+    /**
+     * <p>Evicts the least recently used placeholders until the store holds at most the given
+     * number of bytes.</p>
+     *
+     * @param targetSizeBytes The number of bytes to keep at most.
+     * @return The number of bytes evicted.
+     */
+    public synchronized long trimToSize(long targetSizeBytes) {
+        loadIndex();
+        long before = sizeBytes;
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > targetSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            fileFor(entry.getKey()).delete();
+            sizeBytes -= entry.getValue();
+            iterator.remove();
+        }
+        return before - sizeBytes;
+    }
+
+    /**
+     * <p>Removes every stored placeholder, and drops the screenshots still waiting to be
+     * written. Call it when the user signs out, see {@link TurbolinksSession#clearUserData(Context)}.</p>
+     *
+     * @return The number of bytes evicted.
+     */
+    public long clear() {
+        synchronized (pendingWrites) {
+            for (Bitmap bitmap : pendingWrites.values()) {
+                TurbolinksBitmapPool.getInstance().put(bitmap);
+            }
+            pendingWrites.clear();
+            recentWrites.clear();
+        }
+        return trimToSize(0);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Builds the key of a placeholder: the location, normalized like the response cache does,
+     * plus the orientation the screenshot was taken in.</p>
+     *
+     * @param location    The visited location.
+     * @param orientation The screen orientation, from {@code Configuration.orientation}.
+     * @return The key, usable as a file name.
+     */
+    static String keyFor(String location, int orientation) {
+        return TurbolinksResponseCache.keyFor(location, null) + "-" + orientation;
+    }
+
+    /**
+     * <p>Whether the placeholder for the key was captured shortly before, so capturing it again
+     * would only cost a screenshot on the main thread. Doesn't touch the disk.</p>
+     *
+     * @param key                   The placeholder key, see {@link #keyFor(String, int)}.
+     * @param elapsedRealtimeMillis The current {@code SystemClock.elapsedRealtime()}.
+     * @return True if a screenshot for the key is waiting to be written, or was written less
+     * than {@link #RECAPTURE_INTERVAL_MILLIS} ago.
+     */
+    boolean wasCapturedRecently(String key, long elapsedRealtimeMillis) {
+        synchronized (pendingWrites) {
+            if (pendingWrites.containsKey(key)) return true;
+
+            Long writtenAt = recentWrites.get(key);
+            return writtenAt != null && elapsedRealtimeMillis - writtenAt < RECAPTURE_INTERVAL_MILLIS;
+        }
+    }
+
+    /**
+     * <p>Compresses and writes a screenshot in the background. The store takes ownership of the
+     * bitmap and hands it to the {@link TurbolinksBitmapPool} once written. If a screenshot for
+     * the same key is still waiting to be written, only the newer one is written.</p>
+     *
+     * @param key        The placeholder key, see {@link #keyFor(String, int)}.
+     * @param screenshot A software bitmap the caller no longer uses.
+     */
+    void put(final String key, Bitmap screenshot) {
+        Bitmap replaced;
+        synchronized (pendingWrites) {
+            replaced = pendingWrites.put(key, screenshot);
+        }
+        if (replaced != null) {
+            // The write already queued for this key picks up the newer screenshot
+            TurbolinksBitmapPool.getInstance().put(replaced);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap;
+                synchronized (pendingWrites) {
+                    bitmap = pendingWrites.remove(key);
+                }
+                if (bitmap == null) return;
+
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    if (bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                        write(key, out.toByteArray());
+                    }
+                } finally {
+                    TurbolinksBitmapPool.getInstance().put(bitmap);
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Reads and decodes a placeholder in the background. The callback is only called if a
+     * placeholder that isn't stale was found.</p>
+     *
+     * @param key      The placeholder key, see {@link #keyFor(String, int)}.
+     * @param context  Any Android context.
+     * @param callback Receives the decoded, mutable placeholder on the main thread.
+     */
+    void load(final String key, final Context context, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = getFreshFile(key, System.currentTimeMillis());
+                if (file == null) return;
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                options.inMutable = true;
+                final Bitmap placeholder = BitmapFactory.decodeFile(file.getPath(), options);
+                if (placeholder == null) return;
+
+                TurbolinksHelper.runOnMainThread(context, "placeholderLoaded", new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPlaceholderLoaded(placeholder);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * <p>Writes an encoded placeholder, then records its size and evicts older placeholders if
+     * the store is over its cap. Called on the background thread.</p>
+     *
+     * @param key   The placeholder key.
+     * @param bytes The encoded image.
+     */
+    void write(String key, byte[] bytes) {
+        long maxSize;
+        synchronized (this) {
+            maxSize = maxSizeBytes;
+        }
+        if (bytes.length > maxSize) return;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        File file = fileFor(key);
+        try {
+            TurbolinksResponseCache.writeAtomically(file, bytes);
+        } catch (IOException e) {
+            file.delete();
+            return;
+        }
+
+        synchronized (pendingWrites) {
+            recentWrites.put(key, SystemClock.elapsedRealtime());
+        }
+
+        synchronized (this) {
+            loadIndex();
+            Long previous = entries.put(key, file.length());
+            sizeBytes += file.length() - (previous != null ? previous : 0);
+            trimToSize(maxSizeBytes);
+        }
+    }
+
+    /**
+     * <p>Returns the file of a placeholder and marks it as most recently used, unless it is
+     * missing or stale. A stale placeholder is deleted.</p>
+     *
+     * <p>Staleness is measured from the file's modification time, so it is wall clock time and
+     * survives process death; the file isn't touched on reads for that reason, and the LRU order
+     * after a restart is the order placeholders were written in.</p>
+     *
+     * @param key         The placeholder key.
+     * @param nowMillis   The current wall clock time.
+     * @return The placeholder file, or null.
+     */
+    synchronized File getFreshFile(String key, long nowMillis) {
+        loadIndex();
+        Long size = entries.get(key);
+        if (size == null) return null;
+
+        File file = fileFor(key);
+        long age = nowMillis - file.lastModified();
+        if (age <= maxAgeMillis) return file;
+
+        file.delete();
+        entries.remove(key);
+        sizeBytes -= size;
+        return null;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private File fileFor(String key) {
+        return new File(directory, key + IMAGE_SUFFIX);
+    }
+
+    /**
+     * <p>Builds the in-memory LRU index from the files on disk, oldest first. Called with the lock
+     * held.</p>
+     */
+    private void loadIndex() {
+        if (indexLoaded) return;
+        indexLoaded = true;
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        List<File> imageFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(IMAGE_SUFFIX)) {
+                imageFiles.add(file);
+            } else {
+                // Left over from an interrupted write
+                file.delete();
+            }
+        }
+        Collections.sort(imageFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : imageFiles) {
+            String name = file.getName();
+            entries.put(name.substring(0, name.length() - IMAGE_SUFFIX.length()), file.length());
+            sizeBytes += file.length();
+        }
+    }
+
+    private static Executor newBackgroundExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "TurbolinksPlaceholders");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
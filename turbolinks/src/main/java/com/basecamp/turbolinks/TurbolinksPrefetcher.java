@@ -0,0 +1,303 @@
+package com.basecamp.turbolinks;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.webkit.WebResourceResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Fetches the pages behind links the bridge reports as visible, on background priority
+ * threads, and keeps the responses in memory until a Turbolinks visit asks for them. Each
+ * prefetched response is served once; responses older than {@link #MAX_AGE_MILLIS} are dropped.</p>
+ *
+ * <p>Only 200 responses that fit in the byte budget are kept; the least recently prefetched are
+ * dropped first when the budget is exceeded.</p>
+ */
+final class TurbolinksPrefetcher {
+    static final int DEFAULT_MAX_CONCURRENCY = 2;
+    static final long DEFAULT_BYTE_BUDGET = 2 * 1024 * 1024;
+    static final long MAX_AGE_MILLIS = 30 * 1000;
+    private static final int MAX_QUEUED = 16;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    // Oldest first, key -> response
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private long byteBudget = DEFAULT_BYTE_BUDGET;
+    private long sizeBytes;
+    private int hitCount;
+    private int prefetchCount;
+
+    private static final class Entry {
+        final String location;
+        final String contentType;
+        final byte[] body;
+        final long fetchedAt;
+        final String cookieFingerprint;
+
+        Entry(String location, String contentType, byte[] body, long fetchedAt, String cookieFingerprint) {
+            this.location = location;
+            this.contentType = contentType;
+            this.body = body;
+            this.fetchedAt = fetchedAt;
+            this.cookieFingerprint = cookieFingerprint;
+        }
+    }
+
+    private final class PrefetchTask implements Runnable {
+        final String key;
+        final String location;
+        final String referrer;
+        final Map<String, String> customHeaders;
+        final TurbolinksDebugCallback debugCallback;
+
+        PrefetchTask(String key, String location, String referrer, Map<String, String> customHeaders,
+                     TurbolinksDebugCallback debugCallback) {
+            this.key = key;
+            this.location = location;
+            this.referrer = referrer;
+            this.customHeaders = customHeaders;
+            this.debugCallback = debugCallback;
+        }
+
+        @Override
+        public void run() {
+            try {
+                fetch(key, location, referrer, customHeaders, debugCallback);
+            } finally {
+                finished(key);
+            }
+        }
+    }
+
+    TurbolinksPrefetcher() {
+        executor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "TurbolinksPrefetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) return;
+
+                        // Newer locations are more likely to be tapped, make room by dropping the oldest
+                        Runnable oldest = executor.getQueue().poll();
+                        if (oldest instanceof PrefetchTask) {
+                            finished(((PrefetchTask) oldest).key);
+                        }
+                        executor.execute(runnable);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // ---------------------------------------------------
+    // Configuration
+    // ---------------------------------------------------
+
+    void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Prefetch concurrency must be at least 1.");
+        }
+
+        if (maxConcurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxConcurrency);
+            executor.setCorePoolSize(maxConcurrency);
+        } else {
+            executor.setCorePoolSize(maxConcurrency);
+            executor.setMaximumPoolSize(maxConcurrency);
+        }
+    }
+
+    int getMaxConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    synchronized void setByteBudget(long byteBudget) {
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("Prefetch byte budget must not be negative.");
+        }
+        this.byteBudget = byteBudget;
+        trimToSize(byteBudget);
+    }
+
+    synchronized long getByteBudget() {
+        return byteBudget;
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    synchronized int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    // ---------------------------------------------------
+    // Prefetching
+    // ---------------------------------------------------
+
+    /**
+     * <p>Queues a background fetch of the location, unless it is already cached or being fetched.
+     * When more locations are queued than can wait, the oldest are dropped.</p>
+     *
+     * @param location      The absolute URL to fetch.
+     * @param referrer      The location of the current page, sent as Turbolinks-Referrer.
+     * @param customHeaders The session's custom headers, may be null.
+     * @param debugCallback Debug callback, may be null.
+     */
+    void prefetch(String location, String referrer, Map<String, String> customHeaders,
+                  TurbolinksDebugCallback debugCallback) {
+        String key = TurbolinksResponseCache.keyFor(location, customHeaders);
+        synchronized (this) {
+            if (byteBudget == 0 || inFlight.contains(key) || isFresh(entries.get(key))) return;
+            inFlight.add(key);
+        }
+
+        executor.execute(new PrefetchTask(key, location, referrer, customHeaders, debugCallback));
+    }
+
+    /**
+     * <p>Takes the prefetched response for a Turbolinks visit request, if there is a fresh one.</p>
+     *
+     * @param url           The request URL.
+     * @param customHeaders The session's custom headers, may be null.
+     * @return The response, or null if the location wasn't prefetched.
+     */
+    WebResourceResponse take(String url, Map<String, String> customHeaders) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(TurbolinksResponseCache.keyFor(url, customHeaders));
+            if (entry == null) return null;
+
+            sizeBytes -= entry.body.length;
+            if (!isFresh(entry)) return null;
+        }
+
+        // Fetched with other cookies, e.g. before signing out
+        if (!entry.cookieFingerprint.equals(TurbolinksHttp.cookieFingerprint(url))) return null;
+
+        synchronized (this) {
+            hitCount++;
+        }
+
+        return TurbolinksHttp.buildResponse(url, entry.location, entry.contentType, 200, null, null, entry.body);
+    }
+
+    /**
+     * <p>Drops every prefetched response. Fetches already running still complete.</p>
+     *
+     * @return The number of bytes dropped.
+     */
+    synchronized long clear() {
+        List<Runnable> queued = new ArrayList<>();
+        executor.getQueue().drainTo(queued);
+        for (Runnable runnable : queued) {
+            inFlight.remove(((PrefetchTask) runnable).key);
+        }
+        return trimToSize(0);
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void fetch(String key, String location, String referrer, Map<String, String> customHeaders,
+                       TurbolinksDebugCallback debugCallback) {
+        Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept", TurbolinksHttp.TURBOLINKS_ACCEPT);
+        if (referrer != null) {
+            requestHeaders.put(TurbolinksHttp.TURBOLINKS_REFERRER_HEADER, referrer);
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = TurbolinksHttp.openConnection(location, requestHeaders, customHeaders, null, null);
+            int statusCode = connection.getResponseCode();
+            TurbolinksHttp.storeCookies(location, connection);
+            if (statusCode != HttpURLConnection.HTTP_OK) return;
+
+            long contentLength = connection.getContentLength();
+            synchronized (this) {
+                if (contentLength > byteBudget) return;
+            }
+
+            InputStream stream = connection.getInputStream();
+            byte[] body = TurbolinksHttp.readFully(stream);
+            // After storeCookies, so a response that set a cookie matches the cookies of the visit
+            put(key, new Entry(connection.getURL().toString(), connection.getContentType(), body,
+                    SystemClock.elapsedRealtime(), TurbolinksHttp.cookieFingerprint(location)));
+            TurbolinksLog.d("Prefetched " + location, debugCallback);
+        } catch (IOException | RuntimeException e) {
+            TurbolinksLog.d("Prefetch failed for " + location + ": " + e.getMessage(), debugCallback);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private synchronized void finished(String key) {
+        inFlight.remove(key);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if (entry.body.length > byteBudget) return;
+
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            sizeBytes -= previous.body.length;
+        }
+        entries.put(key, entry);
+        sizeBytes += entry.body.length;
+        prefetchCount++;
+        trimToSize(byteBudget);
+    }
+
+    private long trimToSize(long targetSizeBytes) {
+        long before = sizeBytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > targetSizeBytes && iterator.hasNext()) {
+            sizeBytes -= iterator.next().body.length;
+            iterator.remove();
+        }
+        return before - sizeBytes;
+    }
+
+    private static boolean isFresh(Entry entry) {
+        return entry != null && SystemClock.elapsedRealtime() - entry.fetchedAt < MAX_AGE_MILLIS;
+    }
+}
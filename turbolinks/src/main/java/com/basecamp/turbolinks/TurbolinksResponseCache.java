@@ -0,0 +1,567 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <p>A process-wide disk cache for the HTML responses Turbolinks fetches over XHR when it
+ * advances or replaces a visit. Responses are stored under the app's cache directory, keyed by
+ * the normalized URL plus the session's custom headers, and revalidated with the server using
+ * their ETag or Last-Modified validators. A 304 answer is served from disk.</p>
+ *
+ * <p>The cache is opt-in, see {@link TurbolinksSession#setResponseCacheEnabled(boolean)}. It holds
+ * at most {@link #getMaxSizeBytes()} bytes; the least recently used responses are evicted first.</p>
+ */
+public class TurbolinksResponseCache {
+    private static final String CACHE_DIRECTORY = "turbolinks_responses";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String META_LOCATION = "location";
+    private static final String META_CONTENT_TYPE = "content-type";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "last-modified";
+    private static final String META_STORED_AT = "stored-at";
+    private static final String META_MAX_AGE = "max-age";
+    private static final String META_COOKIE = "cookie";
+    private static final long DEFAULT_MAX_SIZE_BYTES = 10 * 1024 * 1024;
+
+    private static volatile TurbolinksResponseCache instance;
+
+    private final File directory;
+    // Least recently used first, key -> bytes on disk
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean indexLoaded;
+    private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+    private long sizeBytes;
+    private int hitCount;
+    private int revalidateCount;
+    private int missCount;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * Package constructor, use {@link #getInstance(Context)}.
+     *
+     * @param directory The directory the responses are stored in.
+     */
+    TurbolinksResponseCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * <p>Returns the process-wide cache, stored in the app's cache directory.</p>
+     *
+     * @param context Any Android context.
+     * @return The shared cache, guaranteed to not be null.
+     */
+    public static TurbolinksResponseCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TurbolinksResponseCache.class) {
+                if (instance == null) {
+                    instance = new TurbolinksResponseCache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIRECTORY));
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets how many bytes of responses the cache may keep on disk, evicting responses if it
+     * already holds more. The default is 10 MB.</p>
+     *
+     * @param maxSizeBytes The byte cap.
+     */
+    public synchronized void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = Math.max(0, maxSizeBytes);
+        trimToSize(this.maxSizeBytes);
+    }
+
+    /**
+     * @return The byte cap of the cache.
+     */
+    public synchronized long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    /**
+     * @return The bytes of the responses currently stored on disk.
+     */
+    public synchronized long getSizeBytes() {
+        loadIndex();
+        return sizeBytes;
+    }
+
+    /**
+     * @return The number of responses served from disk without a network request.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of responses served from disk after the server answered 304.
+     */
+    public synchronized int getRevalidateCount() {
+        return revalidateCount;
+    }
+
+    /**
+     * @return The number of responses downloaded in full.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * <p>Evicts the least recently used responses until the cache holds at most the given number
+     * of bytes.</p>
+     *
+     * @param targetSizeBytes The number of bytes to keep at most.
+     * @return The number of bytes evicted.
+     */
+    public synchronized long trimToSize(long targetSizeBytes) {
+        loadIndex();
+        long before = sizeBytes;
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > targetSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            deleteFiles(entry.getKey());
+            sizeBytes -= entry.getValue();
+            iterator.remove();
+        }
+        return before - sizeBytes;
+    }
+
+    /**
+     * <p>Removes every stored response.</p>
+     *
+     * @return The number of bytes evicted.
+     */
+    public long clear() {
+        return trimToSize(0);
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Whether a request intercepted by the WebView is a Turbolinks visit request: a GET with
+     * the Turbolinks-Referrer header that Turbolinks adds to its XHRs.</p>
+     *
+     * @param method         The request method.
+     * @param requestHeaders The request headers.
+     * @return True if the cache should handle the request.
+     */
+    static boolean isTurbolinksVisitRequest(String method, Map<String, String> requestHeaders) {
+        return "GET".equalsIgnoreCase(method) && TurbolinksHttp.getHeader(requestHeaders, TurbolinksHttp.TURBOLINKS_REFERRER_HEADER) != null;
+    }
+
+    /**
+     * <p>Builds the cache key: a hash of the normalized URL and the custom headers sent with it,
+     * so responses requested with different headers don't replace each other.</p>
+     *
+     * @param url           The request URL.
+     * @param customHeaders The session's custom headers, may be null.
+     * @return The hex encoded key.
+     */
+    static String keyFor(String url, Map<String, String> customHeaders) {
+        StringBuilder sb = new StringBuilder(normalizeUrl(url));
+        if (customHeaders != null) {
+            for (Map.Entry<String, String> header : new TreeMap<>(customHeaders).entrySet()) {
+                sb.append('\n').append(header.getKey().toLowerCase(Locale.US)).append(':').append(header.getValue());
+            }
+        }
+
+        return hash(sb.toString());
+    }
+
+    /**
+     * @param value The value to hash.
+     * @return The hex encoded SHA-1 of the value.
+     */
+    static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    /**
+     * <p>Lowercases the scheme and host, drops default ports and the fragment.</p>
+     *
+     * @param url The URL to normalize.
+     * @return The normalized URL, or the URL itself if it can't be parsed.
+     */
+    static String normalizeUrl(String url) {
+        try {
+            URI uri = new URI(url);
+            String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : null;
+            String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.US) : null;
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = TextUtils.isEmpty(uri.getRawPath()) ? "/" : uri.getRawPath();
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(scheme).append("://").append(host);
+            if (port != -1) sb.append(':').append(port);
+            sb.append(path);
+            if (uri.getRawQuery() != null) sb.append('?').append(uri.getRawQuery());
+            return sb.toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * <p>Answers a Turbolinks visit request from disk or the network. Must be called off the main
+     * thread, from {@code WebViewClient.shouldInterceptRequest}.</p>
+     *
+     * @param url            The request URL.
+     * @param requestHeaders The headers the WebView would have sent.
+     * @param customHeaders  The session's custom headers, may be null.
+     * @param stats          The stats of the current visit, updated with the outcome.
+     * @param debugCallback  Debug callback, may be null.
+     * @return The response to hand to the WebView, or null to let the WebView make the request
+     * itself.
+     */
+    WebResourceResponse intercept(String url, Map<String, String> requestHeaders, Map<String, String> customHeaders,
+                                  TurbolinksVisitCacheStats stats, TurbolinksDebugCallback debugCallback) {
+        String key = keyFor(url, customHeaders);
+        Properties meta = readMeta(key);
+        long now = System.currentTimeMillis();
+
+        // Stored while other cookies were set, e.g. before a sign in: neither serve nor revalidate it
+        String cookieFingerprint = TurbolinksHttp.cookieFingerprint(url);
+        if (meta != null && !cookieFingerprint.equals(meta.getProperty(META_COOKIE))) {
+            meta = null;
+        }
+
+        if (meta != null && isFresh(meta, now)) {
+            byte[] body = readBody(key);
+            if (body != null) {
+                touch(key);
+                recordHit(stats);
+                TurbolinksLog.d("Response cache hit: " + url, debugCallback);
+                return buildResponse(url, meta, 200, null, null, body);
+            }
+            meta = null;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = TurbolinksHttp.openConnection(url, requestHeaders, customHeaders,
+                    meta != null ? meta.getProperty(META_ETAG) : null,
+                    meta != null ? meta.getProperty(META_LAST_MODIFIED) : null);
+            int statusCode = connection.getResponseCode();
+            TurbolinksHttp.storeCookies(url, connection);
+
+            // Keyed to the cookies after the response, which may have set or rotated some: those
+            // are the cookies the next request sends
+            String storedCookieFingerprint = TurbolinksHttp.cookieFingerprint(url);
+
+            if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+                byte[] body = readBody(key);
+                if (body != null) {
+                    meta.setProperty(META_COOKIE, storedCookieFingerprint);
+                    meta.setProperty(META_STORED_AT, String.valueOf(now));
+                    meta.setProperty(META_MAX_AGE, String.valueOf(parseMaxAge(connection.getHeaderField("Cache-Control"))));
+                    writeEntry(key, meta, null);
+                    recordRevalidate(stats);
+                    TurbolinksLog.d("Response cache revalidated: " + url, debugCallback);
+                    return buildResponse(url, meta, 200, null, null, body);
+                }
+
+                // The body disappeared under us, fall back to the WebView's own request
+                return null;
+            }
+
+            if (!TurbolinksHttp.isInterceptableStatus(statusCode)) {
+                // A redirect HttpURLConnection didn't follow, e.g. to another scheme, or a 304
+                // for a response we don't have
+                TurbolinksLog.d("Response cache passing on " + url + " (" + statusCode + ")", debugCallback);
+                return null;
+            }
+
+            InputStream stream = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            byte[] body = stream != null ? TurbolinksHttp.readFully(stream) : new byte[0];
+            Properties newMeta = buildMeta(connection, now);
+            newMeta.setProperty(META_COOKIE, storedCookieFingerprint);
+
+            if (statusCode == HttpURLConnection.HTTP_OK && isStorable(connection)) {
+                writeEntry(key, newMeta, body);
+            }
+
+            recordMiss(stats);
+            TurbolinksLog.d("Response cache miss: " + url + " (" + statusCode + ")", debugCallback);
+            return buildResponse(url, newMeta, statusCode, connection.getResponseMessage(), connection.getHeaderFields(), body);
+        } catch (IOException | RuntimeException e) {
+            TurbolinksLog.d("Response cache request failed: " + e.getMessage(), debugCallback);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private Properties buildMeta(HttpURLConnection connection, long now) {
+        Properties meta = new Properties();
+        meta.setProperty(META_LOCATION, connection.getURL().toString());
+        meta.setProperty(META_STORED_AT, String.valueOf(now));
+        meta.setProperty(META_MAX_AGE, String.valueOf(parseMaxAge(connection.getHeaderField("Cache-Control"))));
+        putIfNotNull(meta, META_CONTENT_TYPE, connection.getContentType());
+        putIfNotNull(meta, META_ETAG, connection.getHeaderField("ETag"));
+        putIfNotNull(meta, META_LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+        return meta;
+    }
+
+    /**
+     * <p>Only responses that can be revalidated or have a freshness lifetime are worth storing.</p>
+     */
+    private boolean isStorable(HttpURLConnection connection) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("no-store")) return false;
+
+        return connection.getHeaderField("ETag") != null
+                || connection.getHeaderField("Last-Modified") != null
+                || parseMaxAge(cacheControl) > 0;
+    }
+
+    private static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null) return 0;
+
+        for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-cache")) return 0;
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isFresh(Properties meta, long now) {
+        try {
+            long storedAt = Long.parseLong(meta.getProperty(META_STORED_AT, "0"));
+            long maxAge = Long.parseLong(meta.getProperty(META_MAX_AGE, "0"));
+            return now - storedAt < maxAge * 1000;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static WebResourceResponse buildResponse(String url, Properties meta, int statusCode, String reasonPhrase,
+                                                     Map<String, List<String>> headerFields, byte[] body) {
+        return TurbolinksHttp.buildResponse(url, meta.getProperty(META_LOCATION), meta.getProperty(META_CONTENT_TYPE),
+                statusCode, reasonPhrase, headerFields, body);
+    }
+
+    private Properties readMeta(String key) {
+        synchronized (this) {
+            loadIndex();
+            if (!entries.containsKey(key)) return null;
+        }
+
+        File file = new File(directory, key + META_SUFFIX);
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            Properties meta = new Properties();
+            meta.load(in);
+            return meta;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private byte[] readBody(String key) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(new File(directory, key + BODY_SUFFIX));
+            return TurbolinksHttp.readFully(in);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * <p>Writes the metadata and, when given, the body of an entry, then records its size and
+     * evicts older entries if the cache is over its cap.</p>
+     */
+    private void writeEntry(String key, Properties meta, byte[] body) {
+        long maxSize;
+        synchronized (this) {
+            maxSize = maxSizeBytes;
+        }
+        if (body != null && body.length > maxSize) return;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        try {
+            if (body != null) {
+                writeAtomically(new File(directory, key + BODY_SUFFIX), body);
+            }
+            ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+            meta.store(metaBytes, null);
+            writeAtomically(new File(directory, key + META_SUFFIX), metaBytes.toByteArray());
+        } catch (IOException e) {
+            deleteFiles(key);
+            return;
+        }
+
+        long size = new File(directory, key + BODY_SUFFIX).length() + new File(directory, key + META_SUFFIX).length();
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            sizeBytes += size - (previous != null ? previous : 0);
+            trimToSize(maxSizeBytes);
+        }
+    }
+
+    static void writeAtomically(File file, byte[] bytes) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(bytes);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to write " + file.getName());
+        }
+    }
+
+    /**
+     * <p>Marks an entry as most recently used, in memory and on disk so the order survives a
+     * restart.</p>
+     */
+    private synchronized void touch(String key) {
+        entries.get(key);
+        new File(directory, key + META_SUFFIX).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * <p>Builds the in-memory LRU index from the files on disk, oldest first. Called with the lock
+     * held.</p>
+     */
+    private void loadIndex() {
+        if (indexLoaded) return;
+        indexLoaded = true;
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        List<File> metaFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (file.getName().endsWith(META_SUFFIX)) {
+                metaFiles.add(file);
+            }
+        }
+        Collections.sort(metaFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File metaFile : metaFiles) {
+            String name = metaFile.getName();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            long size = metaFile.length() + new File(directory, key + BODY_SUFFIX).length();
+            entries.put(key, size);
+            sizeBytes += size;
+        }
+    }
+
+    private void deleteFiles(String key) {
+        new File(directory, key + BODY_SUFFIX).delete();
+        new File(directory, key + META_SUFFIX).delete();
+    }
+
+    private synchronized void recordHit(TurbolinksVisitCacheStats stats) {
+        hitCount++;
+        if (stats != null) stats.recordHit();
+    }
+
+    private synchronized void recordRevalidate(TurbolinksVisitCacheStats stats) {
+        revalidateCount++;
+        if (stats != null) stats.recordRevalidate();
+    }
+
+    private synchronized void recordMiss(TurbolinksVisitCacheStats stats) {
+        missCount++;
+        if (stats != null) stats.recordMiss();
+    }
+
+    private static void putIfNotNull(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Remembers the Turbolinks restoration identifier of each activity, so going back to an
+ * activity restores its page from Turbolinks' snapshot cache.</p>
+ *
+ * <p>Activities are held weakly and by identity, and the store is bounded: the least recently
+ * used entries are dropped once it's full. Entries are removed when their activity is destroyed
+ * for good, and written to the activity's saved state so they survive process death.</p>
+ */
+final class TurbolinksRestorationStore {
+    static final int DEFAULT_CAPACITY = 32;
+    static final String BUNDLE_KEY = "com.basecamp.turbolinks.restorationIdentifier";
+
+    private final ReferenceQueue<Activity> collected = new ReferenceQueue<>();
+    private final LinkedHashMap<ActivityKey, String> identifiers;
+    private Application registeredApplication;
+
+    TurbolinksRestorationStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    TurbolinksRestorationStore(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Restoration store capacity must be at least 1.");
+        }
+        identifiers = new LinkedHashMap<ActivityKey, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ActivityKey, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    synchronized void put(Activity activity, String restorationIdentifier) {
+        if (activity == null || restorationIdentifier == null) return;
+
+        purgeCollected();
+        registerLifecycleCallbacks(activity);
+        identifiers.put(new ActivityKey(activity, collected), restorationIdentifier);
+    }
+
+    /**
+     * @return The activity's restoration identifier, or null if there is none.
+     */
+    synchronized String get(Activity activity) {
+        if (activity == null) return null;
+
+        purgeCollected();
+        return identifiers.get(new ActivityKey(activity, null));
+    }
+
+    synchronized void remove(Activity activity) {
+        if (activity == null) return;
+
+        identifiers.remove(new ActivityKey(activity, null));
+    }
+
+    synchronized int size() {
+        purgeCollected();
+        return identifiers.size();
+    }
+
+    synchronized void clear() {
+        identifiers.clear();
+        if (registeredApplication != null) {
+            registeredApplication.unregisterActivityLifecycleCallbacks(lifecycleCallbacks);
+            registeredApplication = null;
+        }
+    }
+
+    void save(Activity activity, Bundle outState) {
+        String restorationIdentifier = get(activity);
+        if (outState != null && restorationIdentifier != null) {
+            outState.putString(BUNDLE_KEY, restorationIdentifier);
+        }
+    }
+
+    void restore(Activity activity, Bundle savedInstanceState) {
+        if (savedInstanceState != null && get(activity) == null) {
+            put(activity, savedInstanceState.getString(BUNDLE_KEY));
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void purgeCollected() {
+        Object key;
+        while ((key = collected.poll()) != null) {
+            identifiers.remove(key);
+        }
+    }
+
+    private void registerLifecycleCallbacks(Activity activity) {
+        if (registeredApplication != null) return;
+
+        Application application = activity.getApplication();
+        if (application != null) {
+            application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+            registeredApplication = application;
+        }
+    }
+
+    private final Application.ActivityLifecycleCallbacks lifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            restore(activity, savedInstanceState);
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityPaused(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            save(activity, outState);
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // A recreated activity is restored from its saved state instead
+            remove(activity);
+        }
+    };
+
+    /**
+     * Weak key that compares activities by identity, and stays equal to itself once cleared so
+     * it can still be removed.
+     */
+    private static final class ActivityKey extends WeakReference<Activity> {
+        private final int hash;
+
+        ActivityKey(Activity activity, ReferenceQueue<Activity> queue) {
+            super(activity, queue);
+            hash = System.identityHashCode(activity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ActivityKey)) return false;
+
+            Activity activity = get();
+            return activity != null && activity == ((ActivityKey) o).get();
+        }
+    }
+}
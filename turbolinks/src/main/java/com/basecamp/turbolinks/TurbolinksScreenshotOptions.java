@@ -0,0 +1,113 @@
+package com.basecamp.turbolinks;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * <p>Controls how {@link TurbolinksView} captures the screenshot it shows while the shared WebView
+ * is attached to another view. Set on a session with
+ * {@link TurbolinksSession#setScreenshotOptions(TurbolinksScreenshotOptions)}.</p>
+ *
+ * <pre>
+ * turbolinksSession.setScreenshotOptions(new TurbolinksScreenshotOptions()
+ *         .mode(TurbolinksScreenshotOptions.Mode.PIXEL_COPY)
+ *         .scale(0.5f)
+ *         .config(Bitmap.Config.RGB_565));
+ * </pre>
+ *
+ * <p>The defaults (synchronous draw, full scale, ARGB_8888) match the original behavior.</p>
+ */
+public class TurbolinksScreenshotOptions {
+
+    /**
+     * How the screenshot is captured.
+     */
+    public enum Mode {
+        /**
+         * Draws the view hierarchy into a canvas synchronously on the main thread.
+         */
+        DRAW,
+
+        /**
+         * Copies the already rendered pixels from the window asynchronously with PixelCopy on
+         * API 26+, scaling on the render thread. Falls back to {@link #DRAW} on older versions or
+         * when the view isn't in an activity window.
+         */
+        PIXEL_COPY
+    }
+
+    private Mode mode = Mode.DRAW;
+    private float scale = 1f;
+    private Bitmap.Config config = Bitmap.Config.ARGB_8888;
+    private boolean hardwareBitmap = false;
+
+    /**
+     * @param mode How the screenshot is captured. Default is {@link Mode#DRAW}.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksScreenshotOptions mode(Mode mode) {
+        this.mode = mode != null ? mode : Mode.DRAW;
+        return this;
+    }
+
+    /**
+     * @param scale Downscale factor applied to the view size, between 0 (exclusive) and 1. The
+     *              screenshot is stretched back to full size when displayed. Default is 1.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksScreenshotOptions scale(float scale) {
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException("Screenshot scale must be greater than 0 and at most 1.");
+        }
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * @param config The config used to capture the screenshot, typically ARGB_8888 or RGB_565
+     *               (half the memory, no transparency). Default is ARGB_8888.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksScreenshotOptions config(Bitmap.Config config) {
+        // Bitmap.Config.HARDWARE only exists on API 26+, reading it earlier throws NoSuchFieldError
+        if (config == null || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE)) {
+            throw new IllegalArgumentException("Screenshot config must be a software config, use hardwareBitmap(true) instead.");
+        }
+        this.config = config;
+        return this;
+    }
+
+    /**
+     * @param hardwareBitmap If true, on API 26+ the captured screenshot is moved into a hardware
+     *                       bitmap so it no longer takes up space on the Java heap. Default is false.
+     * @return The options to continue the chained calls.
+     */
+    public TurbolinksScreenshotOptions hardwareBitmap(boolean hardwareBitmap) {
+        this.hardwareBitmap = hardwareBitmap;
+        return this;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public Bitmap.Config getConfig() {
+        return config;
+    }
+
+    public boolean isHardwareBitmap() {
+        return hardwareBitmap;
+    }
+
+    /**
+     * @param size A view dimension in pixels.
+     * @return The dimension of the screenshot, at least 1 pixel.
+     */
+    int scaledSize(int size) {
+        return Math.max(1, Math.round(size * scale));
+    }
+}
@@ -0,0 +1,17 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Receives the scroll position of the session's WebView, at most once per frame. Set with
+ * {@link TurbolinksSession#setScrollListener(TurbolinksScrollListener)}.</p>
+ */
+public interface TurbolinksScrollListener {
+    /**
+     * <p>Called on the main thread on the first frame after the WebView scrolled.</p>
+     *
+     * @param scrollX   The horizontal scroll position, in pixels.
+     * @param scrollY   The vertical scroll position, in pixels.
+     * @param velocityY The vertical velocity since the previous frame, in pixels per second.
+     *                  Positive while scrolling down, 0 when it can't be measured.
+     */
+    void onScrollChanged(int scrollX, int scrollY, float velocityY);
+}
@@ -0,0 +1,143 @@
+package com.basecamp.turbolinks;
+
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * <p>Watches the scroll position of a WebView. Scroll events are coalesced into a single update
+ * per frame, and the at-top state is only reported when it changes, so the work done while
+ * flinging stays constant no matter how many scroll events the view tree dispatches.</p>
+ *
+ * <p>The scroll listener is only registered while the WebView is attached to a window, since a
+ * detached view's tree observer is not the one its next window will use. Must be used on the main
+ * thread.</p>
+ */
+final class TurbolinksScrollTracker implements ViewTreeObserver.OnScrollChangedListener,
+        Choreographer.FrameCallback, View.OnAttachStateChangeListener {
+    // Frames further apart than this are treated as a new gesture, not used for velocity
+    private static final long MAX_VELOCITY_FRAME_NANOS = 100_000_000L;
+
+    /**
+     * <p>Receives the coalesced updates.</p>
+     */
+    interface Callback {
+        void onAtTopChanged(boolean atTop);
+
+        void onScrolled(int scrollX, int scrollY, float velocityY);
+    }
+
+    private final View view;
+    private final Callback callback;
+    private ViewTreeObserver observer;
+    private boolean frameScheduled;
+    private boolean released;
+    private boolean atTop;
+    private boolean atTopKnown;
+    private int lastX, lastY;
+    private long lastFrameNanos;
+
+    TurbolinksScrollTracker(View view, Callback callback) {
+        this.view = view;
+        this.callback = callback;
+        view.addOnAttachStateChangeListener(this);
+        if (view.isAttachedToWindow()) {
+            register();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Unregisters every listener and drops any pending frame. The tracker can't be reused.</p>
+     */
+    void release() {
+        released = true;
+        view.removeOnAttachStateChangeListener(this);
+        unregister();
+    }
+
+    boolean isAtTop() {
+        return atTop;
+    }
+
+    // ---------------------------------------------------
+    // Listeners
+    // ---------------------------------------------------
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        if (!released) register();
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        unregister();
+    }
+
+    @Override
+    public void onScrollChanged() {
+        if (frameScheduled || released) return;
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (released) return;
+
+        int x = view.getScrollX();
+        int y = view.getScrollY();
+        long frameDelta = frameTimeNanos - lastFrameNanos;
+        float velocityY = 0;
+        if (lastFrameNanos > 0 && frameDelta > 0 && frameDelta <= MAX_VELOCITY_FRAME_NANOS) {
+            velocityY = (y - lastY) * 1e9f / frameDelta;
+        }
+        boolean moved = x != lastX || y != lastY;
+        lastX = x;
+        lastY = y;
+        lastFrameNanos = frameTimeNanos;
+
+        boolean nowAtTop = y == 0;
+        if (!atTopKnown || nowAtTop != atTop) {
+            atTopKnown = true;
+            atTop = nowAtTop;
+            callback.onAtTopChanged(nowAtTop);
+        }
+        if (moved) {
+            callback.onScrolled(x, y, velocityY);
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void register() {
+        if (observer != null) return;
+        observer = view.getViewTreeObserver();
+        observer.addOnScrollChangedListener(this);
+        // Picks up the position the view was attached at
+        onScrollChanged();
+    }
+
+    private void unregister() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+        if (observer == null) return;
+        if (observer.isAlive()) {
+            observer.removeOnScrollChangedListener(this);
+        } else {
+            view.getViewTreeObserver().removeOnScrollChangedListener(this);
+        }
+        observer = null;
+        // The next parent starts from its own refresh state, so report the position again
+        atTopKnown = false;
+        lastFrameNanos = 0;
+    }
+}
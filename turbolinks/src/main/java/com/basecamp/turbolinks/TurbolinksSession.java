@@ -7,24 +7,32 @@ import android.content.Context;
 import android.content.MutableContextWrapper;
 import android.graphics.Bitmap;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
-import android.view.ViewTreeObserver;
 import android.webkit.CookieManager;
 import android.webkit.CookieSyncManager;
-import android.webkit.ValueCallback;
+import android.webkit.WebBackForwardList;
+import android.webkit.WebHistoryItem;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
-import java.util.Date;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import androidx.webkit.ScriptHandler;
 
 /**
  * <p>The main concrete class to use Turbolinks 5 in your app.</p>
@@ -32,8 +40,7 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 public class TurbolinksSession implements TurbolinksScrollUpCallback {
 
     //region Final Static Vars
-    private static final String JAVASCRIPT_GET_WEB_PAGE_HEIGHT =
-            "document.body.scrollHeight";
+    private static final int MAX_TRACKED_VISITS = 8;
     
     //endregion
     
@@ -41,31 +48,96 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     //region  Package public vars (allows for greater flexibility and access for testing)
     // ---------------------------------------------------
 
-    boolean bridgeInjectionInProgress; // Ensures the bridge is only injected once
-    boolean coldBootInProgress;
     boolean restoreWithCachedSnapshot;
-    boolean turbolinksIsReady; // Script finished and TL fully instantiated
+    boolean loadCachedSnapshotFirst;
     boolean screenshotsEnabled;
     boolean pullToRefreshEnabled;
     boolean webViewAttachedToNewParent;
     boolean isAtTop;
+    boolean responseCacheEnabled;
+    boolean placeholdersEnabled;
+    // Bumped when the progress is hidden, so a placeholder read after that isn't shown. Main thread only
+    int placeholderGeneration;
+    volatile boolean prefetchEnabled;
     private String cookieString;
-    private static StringBuilder tempSBHolder;
     int xPosition, yPosition, heightOfPage;
-    long previousOverrideTime;
     Activity activity;
     HashMap<String, String> customHeaders = new HashMap<>();
+    // Immutable copy of customHeaders, republished on every change, for the JavaBridge and IO threads
+    volatile Map<String, String> customHeadersSnapshot = Collections.emptyMap();
     HashMap<String, Object> javascriptInterfaces = new HashMap<>();
-    HashMap<String, String> restorationIdentifierMap = new HashMap<>();
-    String location;
-    String currentVisitIdentifier;
+    final TurbolinksRestorationStore restorationStore = new TurbolinksRestorationStore();
+    // Read and written from both the main and the JavaBridge thread
+    final TurbolinksSessionStateMachine state = new TurbolinksSessionStateMachine();
+    volatile String location;
+    volatile String currentVisitIdentifier;
+    String pageTitle = "";
+    String appShellAssetPath;
+    // Back/forward state of an evicted session's WebView, restored by the next cold boot
+    Bundle savedWebViewState;
+    String appShellHtml;
+    // Also written by the Javascript bridge thread, see pageInvalidated()
+    volatile boolean appShellBootInProgress;
+    volatile boolean appShellBypassed;
     TurbolinksAdapter turbolinksAdapter;
     TurbolinksView turbolinksView;
-    TurbolinksDebugCallback debugCallback;
-//    View progressView;
-//    View progressIndicator;
+    final TurbolinksLogger logger = new TurbolinksLogger();
+    TurbolinksScreenshotOptions screenshotOptions = new TurbolinksScreenshotOptions();
+    volatile TurbolinksVisitCacheStats visitCacheStats = new TurbolinksVisitCacheStats(null);
+    final TurbolinksPrefetcher prefetcher = new TurbolinksPrefetcher();
+    final TurbolinksMemoryTrimmer memoryTrimmer = new TurbolinksMemoryTrimmer(this);
+    final TurbolinksVisitScheduler visitScheduler = new TurbolinksVisitScheduler();
+    // Bridge events for the adapter and view, delivered in order once per frame
+    final TurbolinksEventDispatcher eventDispatcher;
+    private final Runnable hideProgressEvent = new Runnable() {
+        @Override
+        public void run() {
+            placeholderGeneration++;
+            if (turbolinksView != null) {
+                turbolinksView.hideProgress();
+            }
+        }
+    };
+    private final Runnable showProgressEvent = new Runnable() {
+        @Override
+        public void run() {
+            showProgressView();
+        }
+    };
+    private final Runnable capturePlaceholderEvent = new Runnable() {
+        @Override
+        public void run() {
+            capturePlaceholder();
+        }
+    };
+    private final Runnable stopRefreshingEvent = new Runnable() {
+        @Override
+        public void run() {
+            stopRefreshing();
+        }
+    };
+    volatile TurbolinksVisitMetricsListener visitMetricsListener;
+    // Visits whose metrics are still being recorded, oldest first; abandoned visits fall off the end
+    final LinkedHashMap<String, TurbolinksVisitMetrics> visitMetrics = new LinkedHashMap<String, TurbolinksVisitMetrics>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TurbolinksVisitMetrics> eldest) {
+            return size() > MAX_TRACKED_VISITS;
+        }
+    };
+    String proposedLocation;
+    String proposedAction;
+    long proposedNanos = -1;
+    TurbolinksScrollTracker scrollTracker;
+    ScriptHandler bridgeScriptHandler; // Null when the bridge is injected after onPageFinished
+    TurbolinksScrollListener scrollListener;
+    volatile TurbolinksPageMetricsListener pageMetricsListener;
+    View progressView;
+    View progressIndicator;
+    int progressIndicatorDelay = PROGRESS_INDICATOR_DELAY;
 
     static volatile TurbolinksSession defaultInstance;
+    private static final AtomicInteger nextSessionId = new AtomicInteger();
+    private static final TurbolinksBootEventLog bootEvents = TurbolinksBootEventLog.getInstance();
 
     //endregion
     
@@ -78,9 +150,12 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     static final String ACTION_REPLACE = "replace";
     static final String ACTION_RELOAD = "reload";
     static final String JAVASCRIPT_INTERFACE_NAME = "TurbolinksNative";
+    // The document start bridge only exists once Turbolinks was found, so it is ready if present
+    private static final String BRIDGE_READY_REPORT = "if (window.webView) TurbolinksNative.setTurbolinksIsReady(true)";
     static final int PROGRESS_INDICATOR_DELAY = 500;
 
     final Context applicationContext;
+    final int sessionId;
     
     WebView webView; //Removed final prefix on 2019-02-27
 
@@ -99,38 +174,45 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         if (context == null) {
             throw new IllegalArgumentException("Context must not be null.");
         }
-	    TurbolinksSession.initTempSB();
-	    TurbolinksSession.tempSBHolder.append("TurbolinksSession private constructor called\n");
+        long constructorStart = SystemClock.elapsedRealtimeNanos();
+        this.sessionId = nextSessionId.incrementAndGet();
         this.isAtTop = false;
         this.pullToRefreshEnabled = true;
         this.applicationContext = context.getApplicationContext();
-	    TurbolinksSession.tempSBHolder.append("Within Constructor, Context != null? " + (this.applicationContext != null) + "\n");
+        this.eventDispatcher = new TurbolinksEventDispatcher(this.applicationContext);
         this.screenshotsEnabled = true;
+        this.loadCachedSnapshotFirst = true;
 //        this.pullToRefreshEnabled = false;
         this.webViewAttachedToNewParent = false;
-        this.webView = TurbolinksHelper.createWebView(applicationContext);
-	    TurbolinksSession.tempSBHolder.append("Within Constructor, finished creating webview \n");
+        long acquireStart = SystemClock.elapsedRealtimeNanos();
+        this.webView = TurbolinksWebViewPool.getInstance(applicationContext).acquire();
+        bootEvents.record(sessionId, TurbolinksBootEvent.Code.WEBVIEW_ACQUIRED, SystemClock.elapsedRealtimeNanos() - acquireStart);
 	    this.webView.addJavascriptInterface(this, JAVASCRIPT_INTERFACE_NAME);
-	    TurbolinksSession.tempSBHolder.append("Within Constructor, successfully added JS Interface: " + JAVASCRIPT_INTERFACE_NAME + " \n");
+	    bootEvents.record(sessionId, TurbolinksBootEvent.Code.JAVASCRIPT_INTERFACE_ADDED);
         this.webView.setWebViewClient(new MyWebViewClient());
-	    TurbolinksSession.tempSBHolder.append("Within Constructor, Set Custom WebViewClient\n");
+	    bootEvents.record(sessionId, TurbolinksBootEvent.Code.WEBVIEW_CLIENT_SET);
+	    this.bridgeScriptHandler = TurbolinksHelper.addDocumentStartBridge(applicationContext, webView, logger);
+	    if (this.bridgeScriptHandler != null) {
+		    bootEvents.record(sessionId, TurbolinksBootEvent.Code.BRIDGE_DOCUMENT_START);
+	    }
         this.setWebviewScrollListener();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             try {
                 this.webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-	            TurbolinksSession.tempSBHolder.append("Within Constructor, API Level >= Kitkat, setting layer type to Hardware \n");
+	            bootEvents.record(sessionId, TurbolinksBootEvent.Code.LAYER_TYPE_HARDWARE);
             } catch (Exception e){
-	            TurbolinksSession.tempSBHolder.append("Error setting hardware type for API Level >= Kitkat: " + e.getMessage() + " \n");
+	            bootEvents.record(sessionId, TurbolinksBootEvent.Code.LAYER_TYPE_FAILED);
             }
         } else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB &&
                 Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
             try {
                 this.webView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-	            TurbolinksSession.tempSBHolder.append("Within Constructor, API Level < Kitkat, setting layer type to Software \n");
+	            bootEvents.record(sessionId, TurbolinksBootEvent.Code.LAYER_TYPE_SOFTWARE);
             } catch (Exception e){
-	            TurbolinksSession.tempSBHolder.append("Error setting hardware type for API Level < Kitkat: " + e.getMessage() + " \n");
+	            bootEvents.record(sessionId, TurbolinksBootEvent.Code.LAYER_TYPE_FAILED);
             }
         }
+        bootEvents.record(sessionId, TurbolinksBootEvent.Code.SESSION_CONSTRUCTED, SystemClock.elapsedRealtimeNanos() - constructorStart);
     }
 
     //endregion
@@ -139,12 +221,6 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     //region Initialization
     // ---------------------------------------------------
 
-    private static void initTempSB(){
-	    if(TurbolinksSession.tempSBHolder == null){
-		    TurbolinksSession.tempSBHolder = new StringBuilder();
-	    }
-    }
-    
     /**
      * Creates a brand new TurbolinksSession that the calling application will be responsible for
      * managing.
@@ -153,8 +229,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @return TurbolinksSession to be managed by the calling application.
      */
     public static TurbolinksSession getNew(Context context) {
-	    TurbolinksSession.initTempSB();
-	    TurbolinksSession.tempSBHolder.append("TurbolinksSession getNew called\n");
+	    bootEvents.record(0, TurbolinksBootEvent.Code.SESSION_REQUESTED);
         return new TurbolinksSession(context);
     }
 
@@ -166,12 +241,11 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @return The default, static instance of a TurbolinksSession, guaranteed to not be null.
      */
     public static TurbolinksSession getDefault(Context context) {
-	    TurbolinksSession.initTempSB();
         if (defaultInstance == null) {
             synchronized (TurbolinksSession.class) {
                 if (defaultInstance == null) {
-                	TurbolinksSession.tempSBHolder.append("Default instance is null, creating new\n");
                     defaultInstance = TurbolinksSession.getNew(context);
+                    bootEvents.record(defaultInstance.sessionId, TurbolinksBootEvent.Code.DEFAULT_SESSION_CREATED);
                 }
             }
         }
@@ -181,9 +255,72 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 
     /**
      * Resets the default TurbolinksSession instance to null in case you want a fresh session.
+     * The old instance stops listening for memory trims until it is given a view again.
      */
     public static void resetDefault() {
-        defaultInstance = null;
+        synchronized (TurbolinksSession.class) {
+            if (defaultInstance != null) {
+                defaultInstance.memoryTrimmer.release();
+            }
+            defaultInstance = null;
+        }
+    }
+
+    /**
+     * <p>Removes what the library keeps of the signed-in user's pages: the responses in the
+     * {@link TurbolinksResponseCache}, the screenshots in the {@link TurbolinksPlaceholderStore}
+     * and the default session's prefetched responses. Call it when the user signs out. Both
+     * stores are shared by all sessions and delete their files right away, so prefer calling it
+     * off the main thread.</p>
+     *
+     * @param context Any Android context.
+     */
+    public static void clearUserData(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context must not be null.");
+        }
+        TurbolinksResponseCache.getInstance(context).clear();
+        TurbolinksPlaceholderStore.getInstance(context).clear();
+
+        TurbolinksSession session = defaultInstance;
+        if (session != null) {
+            session.prefetcher.clear();
+        }
+    }
+
+    /**
+     * <p>Sends the session creation events recorded since the last drain (which session, which
+     * step, layer type decisions and init timings) to the callback at DEBUG level. The events are
+     * kept in a fixed-size {@link TurbolinksBootEventLog}, so only the most recent are available.</p>
+     *
+     * @param callback The callback to send the events to.
+     * @return The number of events sent.
+     */
+    public static int drainBootEvents(TurbolinksDebugCallback callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("Callback must not be null.");
+        }
+        return bootEvents.drainTo(callback);
+    }
+
+    /**
+     * <p>Enables recording of how long work handed to the main thread waits before it runs,
+     * grouped by call site (e.g. "visitCompleted"). Disabling clears what was recorded.</p>
+     *
+     * @param enabled If true post-to-execution delays are recorded.
+     */
+    public static void setMainThreadTimingEnabled(boolean enabled) {
+        TurbolinksMainThreadExecutor.setTimingEnabled(enabled);
+    }
+
+    /**
+     * <p>Returns the post-to-execution delays recorded since
+     * {@link #setMainThreadTimingEnabled(boolean)} was enabled.</p>
+     *
+     * @return A snapshot of the timings, one per call site.
+     */
+    public static List<TurbolinksMainThreadTiming> getMainThreadTimings() {
+        return TurbolinksMainThreadExecutor.getTimings();
     }
 
     /**
@@ -307,12 +444,34 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
                 visitLocationWithAction(location, ACTION_REPLACE);
             }
         });
-	    if(this.debugCallback != null){
-		    this.turbolinksView.setDebugCallback(this.debugCallback);
-	    }
+	    this.turbolinksView.setDebugCallback(this.logger);
+        this.memoryTrimmer.register();
+        this.memoryTrimmer.resumeWebView();
         //Callback function on refresh == 'visitLocationWithAction(location, ACTION_ADVANCE);'
-        this.webViewAttachedToNewParent = this.turbolinksView.attachWebView(webView, screenshotsEnabled, pullToRefreshEnabled);
+        this.webViewAttachedToNewParent = this.turbolinksView.attachWebView(webView,
+                screenshotsEnabled ? screenshotOptions : null, pullToRefreshEnabled);
+
+        return this;
+    }
+
+    /**
+     * <p><b>Optional</b> A custom progress view to show while a visit loads, instead of the
+     * default one. The view is reused by every visit of this session.</p>
+     *
+     * @param progressView           A custom progress view that covers the webView.
+     * @param progressIndicatorResId The id of the progress indicator inside the progress view.
+     * @param progressIndicatorDelay The delay, in milliseconds, before the indicator is shown.
+     * @return The TurbolinksSession to continue the chained calls.
+     */
+    public TurbolinksSession progressView(View progressView, int progressIndicatorResId, int progressIndicatorDelay) {
+        View progressIndicator = progressView != null ? progressView.findViewById(progressIndicatorResId) : null;
+        if (progressIndicator == null) {
+            throw new IllegalArgumentException("A progress indicator view must be provided in your custom progressView.");
+        }
 
+        setProgressIndicatorDelay(progressIndicatorDelay);
+        this.progressView = progressView;
+        this.progressIndicator = progressIndicator;
         return this;
     }
 
@@ -324,40 +483,40 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      */
     public void visit(String location) {
 	    this.runTempLogsCheck();
-	    TurbolinksLog.d("visit called", TurbolinksSession.this.debugCallback);
+	    logger.d(TurbolinksLogEvent.VISIT, location);
 
+        if (!TextUtils.equals(location, proposedLocation)) {
+            recordVisitProposed(location, null);
+        }
         this.location = location;
 
         validateRequiredParams();
 
+        boolean turbolinksIsReady = state.is(TurbolinksSessionState.READY);
         if (!turbolinksIsReady || webViewAttachedToNewParent) {
         	if(!turbolinksIsReady) {
-		        TurbolinksLog.d("!turbolinksIsReady", TurbolinksSession.this.debugCallback);
+		        TurbolinksLog.d("!turbolinksIsReady", logger);
 	        } else {
-		        TurbolinksLog.d("webViewAttachedToNewParent", TurbolinksSession.this.debugCallback);
+		        TurbolinksLog.d("webViewAttachedToNewParent", logger);
 	        }
-            //todo Would normally have a callback function here for progress bar
+            showProgressView();
+            if (!turbolinksIsReady) {
+                showPlaceholder();
+            }
         }
 
         if (turbolinksIsReady) {
-	        TurbolinksLog.d("turbolinksIsReady, calling visitCurrentLocationWithTurbolinks with Url: " + this.location,
-			        TurbolinksSession.this.debugCallback);
+	        logger.d(TurbolinksLogEvent.VISIT_WITH_TURBOLINKS, this.location);
             visitCurrentLocationWithTurbolinks();
-        }
-
-        if (!turbolinksIsReady && !coldBootInProgress) {
-	        TurbolinksLog.d("!turbolinksIsReady && !coldBootInProgress, loadingUrl: " + this.location,
-			        TurbolinksSession.this.debugCallback);
-            TurbolinksLog.d("Cold booting: " + this.location, TurbolinksSession.this.debugCallback);
-            TurbolinksSession.this.initCustomHeaders();
-            webView.loadUrl(this.location, TurbolinksSession.this.customHeaders);
+        } else if (state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.COLD_BOOTING, "visit")) {
+            coldBoot();
         }
 
         // Reset so that cached snapshot is not the default for the next visit
         restoreWithCachedSnapshot = false;
 
         /*
-        if (!turbolinksIsReady && coldBootInProgress), we don't fire a new visit. This is
+        If a cold boot is already in progress, we don't fire a new visit. This is
         typically a slow connection load. This allows the previous cold boot to finish (inject TL).
         No matter what, if new requests are sent to Turbolinks via Turbolinks.location, we'll
         always have the last desired location. And when setTurbolinksIsReady(true) is called,
@@ -371,33 +530,27 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 	 * @param location
 	 */
 	public void replaceExistingPage(String location){
-		TurbolinksLog.d("reaplce existing page called", TurbolinksSession.this.debugCallback);
+		TurbolinksLog.d("reaplce existing page called", logger);
 		
 		this.location = location;
 		
 		validateRequiredParams();
 		
+		boolean turbolinksIsReady = state.is(TurbolinksSessionState.READY);
 		if (!turbolinksIsReady || webViewAttachedToNewParent) {
 			if(!turbolinksIsReady) {
-				TurbolinksLog.d("!turbolinksIsReady", TurbolinksSession.this.debugCallback);
+				TurbolinksLog.d("!turbolinksIsReady", logger);
 			} else {
-				TurbolinksLog.d("webViewAttachedToNewParent", TurbolinksSession.this.debugCallback);
+				TurbolinksLog.d("webViewAttachedToNewParent", logger);
 			}
-			//todo Would normally have a callback function here for progress bar
+			showProgressView();
 		}
 		
 		if (turbolinksIsReady) {
-			TurbolinksLog.d("turbolinksIsReady, calling visitCurrentLocationWithTurbolinks with Url: " + this.location,
-					TurbolinksSession.this.debugCallback);
+			logger.d(TurbolinksLogEvent.VISIT_WITH_TURBOLINKS, this.location);
 			visitLocationWithAction(location, ACTION_REPLACE);
-		}
-		
-		if (!turbolinksIsReady && !coldBootInProgress) {
-			TurbolinksLog.d("!turbolinksIsReady && !coldBootInProgress, loadingUrl: " + this.location,
-					TurbolinksSession.this.debugCallback);
-			TurbolinksLog.d("Cold booting: " + this.location, TurbolinksSession.this.debugCallback);
-			TurbolinksSession.this.initCustomHeaders();
-			webView.loadUrl(this.location, TurbolinksSession.this.customHeaders);
+		} else if (state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.COLD_BOOTING, "replaceExistingPage")) {
+			coldBoot();
 		}
 		this.webView.clearHistory();
 		// Reset so that cached snapshot is not the default for the next visit
@@ -417,9 +570,9 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 	 * @return The TurbolinksSession to continue the chained calls.
 	 */
 	public TurbolinksSession debugCallback(TurbolinksDebugCallback debugCallback) {
-		this.debugCallback = debugCallback;
+		this.logger.setCallback(debugCallback);
 		if(this.turbolinksView != null){
-			this.turbolinksView.setDebugCallback(this.debugCallback);
+			this.turbolinksView.setDebugCallback(this.logger);
 		}
 		return this;
 	}
@@ -457,9 +610,14 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitProposedToLocationWithAction(final String location, final String action) {
-        TurbolinksLog.d("visitProposedToLocationWithAction called", TurbolinksSession.this.debugCallback);
+        logger.d(TurbolinksLogEvent.VISIT_PROPOSED, location, action);
+        if (!visitScheduler.propose(location, SystemClock.elapsedRealtime())) {
+            TurbolinksLog.d("Visit proposal already scheduled or in flight: " + location, logger);
+            return;
+        }
+        recordVisitProposed(location, action);
         try {
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            eventDispatcher.dispatch(new Runnable() {
                 @Override
                 public void run() {
                     turbolinksAdapter.visitProposedToLocationWithAction(location, action);
@@ -467,7 +625,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             });
         } catch (Exception e){
             TurbolinksLog.d("Exception within visitProposedToLocationWithAction: " + e.getMessage(),
-		            TurbolinksSession.this.debugCallback);
+		            logger);
         }
     }
 
@@ -483,11 +641,67 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitStarted(String visitIdentifier, boolean visitHasCachedSnapshot) {
-        TurbolinksLog.d(("visitStarted called. Identifier == " + visitIdentifier), TurbolinksSession.this.debugCallback);
+        visitStarted(visitIdentifier, visitHasCachedSnapshot, Double.NaN);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Same as {@link #visitStarted(String, boolean)}, with the
+     * page's {@code performance.now()} at the time of the call.</p>
+     *
+     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
+     * never call this directly as it could lead to unintended behavior.</p>
+     *
+     * @param visitIdentifier        A unique identifier for the visit.
+     * @param visitHasCachedSnapshot Whether the visit has a cached snapshot available.
+     * @param jsTimestamp            The page's performance.now(), in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void visitStarted(String visitIdentifier, boolean visitHasCachedSnapshot, double jsTimestamp) {
+        visitStarted(visitIdentifier, visitHasCachedSnapshot, null, jsTimestamp);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Same as {@link #visitStarted(String, boolean, double)},
+     * with the location of the visit. Restoration visits and visits started from the page's
+     * Javascript never pass through {@link #visitLocationWithAction(String, String)}, so only the
+     * bridge knows where they go.</p>
+     *
+     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
+     * never call this directly as it could lead to unintended behavior.</p>
+     *
+     * @param visitIdentifier        A unique identifier for the visit.
+     * @param visitHasCachedSnapshot Whether the visit has a cached snapshot available.
+     * @param visitLocation          The absolute location of the visit, may be null.
+     * @param jsTimestamp            The page's performance.now(), in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void visitStarted(String visitIdentifier, boolean visitHasCachedSnapshot, String visitLocation, double jsTimestamp) {
+        logger.d(TurbolinksLogEvent.VISIT_STARTED, visitIdentifier, visitHasCachedSnapshot);
         this.currentVisitIdentifier = visitIdentifier;
-        runJavascript("webView.changeHistoryForVisitWithIdentifier", this.debugCallback, visitIdentifier);
-        runJavascript("webView.issueRequestForVisitWithIdentifier", this.debugCallback, visitIdentifier);
-        runJavascript("webView.loadCachedSnapshotForVisitWithIdentifier", this.debugCallback, visitIdentifier);
+        if (!visitHasCachedSnapshot) {
+            // A cached snapshot is painted right away, covering it would only add a flash
+            eventDispatcher.dispatchOnce(showProgressEvent);
+        }
+        recordVisitStarted(visitIdentifier, visitHasCachedSnapshot, jsTimestamp);
+        String supersededIdentifier = visitScheduler.started(visitIdentifier, visitLocation);
+        this.visitCacheStats = new TurbolinksVisitCacheStats(visitIdentifier);
+
+        TurbolinksJavascriptBatch batch = new TurbolinksJavascriptBatch();
+        if (supersededIdentifier != null) {
+            batch.add("webView.cancelVisitWithIdentifier", supersededIdentifier);
+        }
+        batch.add("webView.changeHistoryForVisitWithIdentifier", visitIdentifier);
+        if (loadCachedSnapshotFirst) {
+            // Paint the cached snapshot before the request goes out
+            batch.add("webView.loadCachedSnapshotForVisitWithIdentifier", visitIdentifier)
+                    .add("webView.issueRequestForVisitWithIdentifier", visitIdentifier);
+        } else {
+            batch.add("webView.issueRequestForVisitWithIdentifier", visitIdentifier)
+                    .add("webView.loadCachedSnapshotForVisitWithIdentifier", visitIdentifier);
+        }
+        runJavascriptBatch(batch);
     }
 
     /**
@@ -502,10 +716,30 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitRequestCompleted(String visitIdentifier) {
-        TurbolinksLog.d(("visitRequestCompleted called. Identifier == " + visitIdentifier), TurbolinksSession.this.debugCallback);
+        visitRequestCompleted(visitIdentifier, Double.NaN);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Same as {@link #visitRequestCompleted(String)}, with the
+     * page's {@code performance.now()} at the time of the call.</p>
+     *
+     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
+     * never call this directly as it could lead to unintended behavior.</p>
+     *
+     * @param visitIdentifier A unique identifier for the visit.
+     * @param jsTimestamp     The page's performance.now(), in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void visitRequestCompleted(String visitIdentifier, double jsTimestamp) {
+        logger.d(TurbolinksLogEvent.VISIT_REQUEST_COMPLETED, visitIdentifier);
+        TurbolinksVisitMetrics metrics = visitMetricsFor(visitIdentifier);
+        if (metrics != null) {
+            metrics.requestCompleted(SystemClock.elapsedRealtimeNanos(), jsTimestamp);
+        }
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            runJavascript("webView.loadResponseForVisitWithIdentifier", this.debugCallback, visitIdentifier);
+            runJavascript("webView.loadResponseForVisitWithIdentifier", this.logger, visitIdentifier);
         }
     }
 
@@ -521,12 +755,17 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitRequestFailedWithStatusCode(final String visitIdentifier, final int statusCode) {
-        TurbolinksLog.d("visitRequestFailedWithStatusCode called. Status code passed from parent method: " + statusCode,
-		        TurbolinksSession.this.debugCallback);
+        logger.d(TurbolinksLogEvent.VISIT_REQUEST_FAILED, visitIdentifier, statusCode);
+        visitScheduler.finished(visitIdentifier);
+        TurbolinksVisitMetrics metrics = visitMetricsFor(visitIdentifier);
+        if (metrics != null) {
+            metrics.failed(statusCode, SystemClock.elapsedRealtimeNanos());
+            finishVisitMetrics(metrics);
+        }
         hideProgressView(visitIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            eventDispatcher.dispatch(new Runnable() {
                 @Override
                 public void run() {
                     turbolinksAdapter.requestFailedWithStatusCode(statusCode);
@@ -547,8 +786,28 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitRendered(String visitIdentifier) {
-        TurbolinksLog.d("visitRendered called, hiding progress view for identifier: " + visitIdentifier,
-		        TurbolinksSession.this.debugCallback);
+        visitRendered(visitIdentifier, Double.NaN);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Same as {@link #visitRendered(String)}, with the page's
+     * {@code performance.now()} at the time of the call.</p>
+     *
+     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
+     * never call this directly as it could lead to unintended behavior.</p>
+     *
+     * @param visitIdentifier A unique identifier for the visit.
+     * @param jsTimestamp     The page's performance.now(), in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void visitRendered(String visitIdentifier, double jsTimestamp) {
+        logger.d(TurbolinksLogEvent.VISIT_RENDERED, visitIdentifier);
+        TurbolinksVisitMetrics metrics = visitMetricsFor(visitIdentifier);
+        if (metrics != null) {
+            metrics.rendered(SystemClock.elapsedRealtimeNanos(), jsTimestamp);
+            finishVisitMetrics(metrics);
+        }
         hideProgressView(visitIdentifier);
     }
 
@@ -566,18 +825,48 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void visitCompleted(String visitIdentifier, String restorationIdentifier) {
-        TurbolinksLog.d("visitCompleted called", TurbolinksSession.this.debugCallback);
+        visitCompleted(visitIdentifier, restorationIdentifier, Double.NaN);
+    }
 
-        addRestorationIdentifierToMap(restorationIdentifier);
+    /**
+     * <p><b>JavascriptInterface only</b> Same as {@link #visitCompleted(String, String)}, with the
+     * page's {@code performance.now()} at the time of the call.</p>
+     *
+     * <p>Warning: This method is public so it can be used as a Javascript Interface. you should
+     * never call this directly as it could lead to unintended behavior.</p>
+     *
+     * @param visitIdentifier       A unique identifier for the visit.
+     * @param restorationIdentifier A unique identifier for restoring the page and scroll position
+     *                              from cache.
+     * @param jsTimestamp           The page's performance.now(), in milliseconds.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void visitCompleted(String visitIdentifier, String restorationIdentifier, double jsTimestamp) {
+        logger.d(TurbolinksLogEvent.VISIT_COMPLETED, visitIdentifier);
+        visitScheduler.finished(visitIdentifier);
+        TurbolinksVisitMetrics metrics = visitMetricsFor(visitIdentifier);
+        if (metrics != null) {
+            metrics.completed(SystemClock.elapsedRealtimeNanos(), jsTimestamp);
+            finishVisitMetrics(metrics);
+        }
+        if (responseCacheEnabled) {
+            logger.d(TurbolinksLogEvent.RESPONSE_CACHE_STATS, visitCacheStats);
+        }
+
+        restorationStore.put(activity, restorationIdentifier);
 
         if (TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-            TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+            eventDispatcher.dispatch(new Runnable() {
                 @Override
                 public void run() {
                     turbolinksAdapter.visitCompleted();
-                    stopRefreshing();
                 }
             });
+            eventDispatcher.dispatchOnce(stopRefreshingEvent);
+            if (placeholdersEnabled) {
+                eventDispatcher.dispatchOnce(capturePlaceholderEvent);
+            }
         }
     }
     
@@ -591,11 +880,13 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void pageInvalidated() {
-        TurbolinksLog.d("pageInvalidated called", TurbolinksSession.this.debugCallback);
+        logger.d(TurbolinksLogEvent.PAGE_INVALIDATED);
 
+        // The shell's tracked assets are out of date, so reload from the network once
+        appShellBypassed = appShellAssetPath != null;
         resetToColdBoot();
 
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+        eventDispatcher.dispatch(new Runnable() {
             @Override
             public void run() { // route through normal chain so progress view is shown, regular logging, etc.
                 turbolinksAdapter.pageInvalidated();
@@ -622,23 +913,18 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void hideProgressView(final String visitIdentifier) {
-        TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
-            @Override
-            public void run() {
-                /**
-                 * pageInvalidated will cold boot, but another in-flight response from
-                 * visitResponseLoaded could attempt to hide the progress view. Checking
-                 * turbolinksIsReady ensures progress view isn't hidden too soon by the non cold boot.
-                 */
-                if (turbolinksIsReady && TextUtils.equals(visitIdentifier, currentVisitIdentifier)) {
-                    TurbolinksLog.d("Hiding progress view for visitIdentifier: " + visitIdentifier + ", currentVisitIdentifier: " + currentVisitIdentifier,
-		                    TurbolinksSession.this.debugCallback);
-                    turbolinksView.hideProgress();
-                } else {
-                    stopRefreshing();
-                }
-            }
-        });
+        /**
+         * pageInvalidated will cold boot, but another in-flight response from
+         * visitResponseLoaded could attempt to hide the progress view. Checking
+         * the session is ready ensures progress view isn't hidden too soon by the non cold boot.
+         */
+        final boolean currentVisit = state.is(TurbolinksSessionState.READY)
+                && TextUtils.equals(visitIdentifier, currentVisitIdentifier);
+        if (currentVisit) {
+            logger.d(TurbolinksLogEvent.PROGRESS_HIDDEN, visitIdentifier, currentVisitIdentifier);
+        }
+
+        eventDispatcher.dispatchOnce(currentVisit ? hideProgressEvent : stopRefreshingEvent);
     }
 
     /**
@@ -654,26 +940,31 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @SuppressWarnings("unused")
     @android.webkit.JavascriptInterface
     public void setTurbolinksIsReady(boolean turbolinksIsReady) {
-	    TurbolinksLog.d("setTurbolinksIsReady: " + turbolinksIsReady,
-			    TurbolinksSession.this.debugCallback);
-	    this.turbolinksIsReady = turbolinksIsReady;
+	    logger.d(TurbolinksLogEvent.TURBOLINKS_READY, turbolinksIsReady);
 	    if (turbolinksIsReady) {
 		    this.turbolinksAdapter.onPageSupportsTurbolinks(true);
-		    this.bridgeInjectionInProgress = false;
+		    if (state.moveTo(TurbolinksSessionState.READY, "setTurbolinksIsReady") == TurbolinksSessionState.READY) {
+			    // Already visited when the session became ready
+			    return;
+		    }
 		
-		    TurbolinksHelper.runOnMainThread(applicationContext, new Runnable() {
+		    TurbolinksHelper.runOnMainThread(applicationContext, "setTurbolinksIsReady", new Runnable() {
 			    @Override
 			    public void run() {
 				    TurbolinksLog.d("TurbolinksSession is ready",
-						    TurbolinksSession.this.debugCallback);
-				    visitCurrentLocationWithTurbolinks();
+						    logger);
+				    if (appShellBootInProgress) {
+					    // The shell isn't a page of its own; replace it instead of going back to it
+					    appShellBootInProgress = false;
+					    visitCurrentLocationWithTurbolinks(ACTION_REPLACE);
+				    } else {
+					    visitCurrentLocationWithTurbolinks();
+				    }
 			    }
 		    });
-		
-		    this.coldBootInProgress = false;
 	    } else {
 		    TurbolinksLog.d("TurbolinksSession is not ready. Resetting and throw error.",
-				    TurbolinksSession.this.debugCallback);
+				    logger);
 		    resetToColdBoot();
 		    visitRequestFailedWithStatusCode(currentVisitIdentifier, 500);
 	    }
@@ -690,13 +981,18 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     @android.webkit.JavascriptInterface
     public void turbolinksDoesNotExist() {
         TurbolinksLog.d("turbolinksDoesNotExist on this page, going to cold boot",
-		        TurbolinksSession.this.debugCallback);
-        TurbolinksHelper.runOnMainThread(this.applicationContext, new Runnable() {
+		        logger);
+        eventDispatcher.dispatch(new Runnable() {
             @Override
             public void run() {
                 TurbolinksLog.d("Error instantiating turbolinks_bridge.js - resetting to cold boot.",
-		                TurbolinksSession.this.debugCallback);
+		                logger);
+                if (appShellBootInProgress) {
+                    appShellBootInProgress = false;
+                    appShellBypassed = true;
+                }
                 resetToColdBoot();
+                placeholderGeneration++;
                 TurbolinksSession.this.turbolinksView.hideProgress();
 	            TurbolinksSession.this.turbolinksAdapter.bridgeInjectionFailed();
             }
@@ -704,14 +1000,107 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 	    this.turbolinksAdapter.onPageSupportsTurbolinks(false);
     }
 
+    /**
+     * <p><b>JavascriptInterface only</b> Tells the bridge whether to watch links entering the
+     * viewport and report them for prefetching.</p>
+     *
+     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
+     * purposes, you should never call this directly.</p>
+     *
+     * @return True if prefetching is enabled.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Called by the bridge when a same-origin link has scrolled
+     * into view. The location is fetched in the background so a visit to it can be served from
+     * memory.</p>
+     *
+     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
+     * purposes, you should never call this directly.</p>
+     *
+     * @param location The absolute location of the link.
+     * @param referrer The location of the page the link is on.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void prefetchLocation(String location, String referrer) {
+        if (!prefetchEnabled || location == null || !location.startsWith("http")) return;
+
+        prefetcher.prefetch(location, referrer, customHeadersSnapshot, logger);
+    }
+
+    /**
+     * <p><b>JavascriptInterface only</b> Called by the bridge, at most once per animation frame,
+     * when the document height, scroll position or title changed. Values are in CSS pixels.</p>
+     *
+     * <p>Note: This method is public so it can be used as a Javascript Interface. For all practical
+     * purposes, you should never call this directly.</p>
+     *
+     * @param height  The scroll height of the document.
+     * @param scrollX The horizontal scroll position of the viewport.
+     * @param scrollY The vertical scroll position of the viewport.
+     * @param title   The document title.
+     */
+    @SuppressWarnings("unused")
+    @android.webkit.JavascriptInterface
+    public void pageMetricsChanged(final double height, final double scrollX, final double scrollY, final String title) {
+        TurbolinksHelper.runOnMainThread(applicationContext, "pageMetricsChanged", new Runnable() {
+            @Override
+            public void run() {
+                float density = applicationContext.getResources().getDisplayMetrics().density;
+                heightOfPage = (int) (height * density);
+                pageTitle = title != null ? title : "";
+
+                TurbolinksPageMetricsListener listener = pageMetricsListener;
+                if (listener != null) {
+                    listener.onPageMetricsChanged(heightOfPage, (int) (scrollX * density),
+                            (int) (scrollY * density), pageTitle);
+                }
+            }
+        });
+    }
+
     //endregion
     
     // -----------------------------------------------------------------------
     //region  Public
     // -----------------------------------------------------------------------
 	
+	/**
+	 * <p>Releases the session's WebView back to the {@link TurbolinksWebViewPool}, where it is
+	 * cleared and recycled, and drops the references to the adapter and view. The session must
+	 * not be used afterwards. Must be called on the main thread.</p>
+	 *
+	 * <p>The pool only keeps the WebView while it holds fewer than its target size, which is 0
+	 * unless {@link TurbolinksWebViewPool#prewarm(int)} was called. Otherwise the WebView is
+	 * destroyed.</p>
+	 */
 	public void clearInstance(){
-        this.webView.clearFormData();
+		if(this.webView != null) {
+			if(this.scrollTracker != null) {
+				this.scrollTracker.release();
+				this.scrollTracker = null;
+			}
+			if(this.bridgeScriptHandler != null) {
+				this.bridgeScriptHandler.remove();
+				this.bridgeScriptHandler = null;
+			}
+			this.webView.removeJavascriptInterface(JAVASCRIPT_INTERFACE_NAME);
+			for (String name : this.javascriptInterfaces.keySet()) {
+				this.webView.removeJavascriptInterface(name);
+			}
+			this.javascriptInterfaces.clear();
+			this.prefetcher.clear();
+			this.restorationStore.clear();
+			this.memoryTrimmer.release();
+			this.eventDispatcher.release();
+			TurbolinksWebViewPool.getInstance(this.applicationContext).release(this.webView);
+		}
         this.webView = null;
 		this.turbolinksAdapter = null;
 		this.turbolinksView = null;
@@ -740,6 +1129,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             return;
         }
         this.customHeaders = headers;
+        this.publishCustomHeaders();
     }
     
     /**
@@ -761,6 +1151,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         }
         this.initCustomHeaders();
         this.customHeaders.put(key, value);
+        this.publishCustomHeaders();
     }
     
     /**
@@ -771,6 +1162,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         this.initCustomHeaders();
         if(this.customHeaders.containsKey(key)){
             this.customHeaders.remove(key);
+            this.publishCustomHeaders();
         }
     }
     
@@ -779,6 +1171,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      */
     public void clearHeaders(){
         this.customHeaders = new HashMap<>();
+        this.publishCustomHeaders();
     }
     
     /**
@@ -819,7 +1212,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             webView.addJavascriptInterface(object, name);
 
             TurbolinksLog.d("Adding JavascriptInterface: " + name + " for " + object.getClass().toString(),
-		            TurbolinksSession.this.debugCallback);
+		            logger);
         }
     }
 
@@ -840,6 +1233,17 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     public WebView getWebView() {
         return webView;
     }
+
+    /**
+     * <p>Returns the location of the current, or most recent, visit. For a session created by a
+     * {@link TurbolinksSessionManager} in place of an evicted one, it's the evicted session's
+     * location until the first visit.</p>
+     *
+     * @return The location, or null if nothing has been visited.
+     */
+    public String getLocation() {
+        return location;
+    }
 	
 	/**
 	 * <p>Resets the TurbolinksSession to go through the full cold booting sequence (full page load)
@@ -847,9 +1251,8 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 	 * This method should also be used whenever the page is intended to be completely reloaded
 	 */
 	public void resetToColdBoot() {
-		this.bridgeInjectionInProgress = false;
-		this.turbolinksIsReady = false;
-		this.coldBootInProgress = false;
+		this.visitScheduler.reset();
+		this.state.moveTo(TurbolinksSessionState.IDLE, "resetToColdBoot");
 	}
 
     /**
@@ -865,7 +1268,18 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     }
 
     /**
-     * <p>Runs raw Javascript in webView. Simply wraps the loadUrl("javascript: methodName()") call.</p>
+     * <p>Runs an ordered batch of Javascript functions in the Turbolinks webView as a single
+     * evaluation.</p>
+     *
+     * @param batch The function calls to run, in order.
+     */
+    public void runJavascriptBatch(TurbolinksJavascriptBatch batch) {
+        TurbolinksHelper.runJavascriptBatch(this.applicationContext, this.webView, this.logger, batch);
+    }
+
+    /**
+     * <p>Runs raw Javascript in webView. Simply wraps the evaluateJavascript(methodName()) call,
+     * ignoring the result.</p>
      *
      * @param rawJavascript The full Javascript string that will be executed by the WebView.
      */
@@ -873,6 +1287,29 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         TurbolinksHelper.runJavascriptRaw(applicationContext, webView, rawJavascript);
     }
 
+    /**
+     * <p>Evaluates Javascript in the Turbolinks webView and delivers its result, parsed from JSON
+     * into the requested type, to the callback on the main thread. The round trip time of the
+     * call is passed along with the result.</p>
+     *
+     * <pre>
+     * session.evaluate("document.title", String.class, new TurbolinksEvaluationCallback&lt;String&gt;() {...});
+     * </pre>
+     *
+     * @param script     The Javascript to evaluate. Its value is the result.
+     * @param resultType The type to parse the result into, e.g. String.class, Float.class or a
+     *                   Gson-compatible model class.
+     * @param callback   Receives the parsed result or the failure.
+     * @param <T>        The result type.
+     * @return A handle that can be used to cancel delivery of the result.
+     */
+    public <T> TurbolinksEvaluation<T> evaluate(String script, Class<T> resultType,
+                                                TurbolinksEvaluationCallback<T> callback) {
+        TurbolinksEvaluation<T> evaluation = new TurbolinksEvaluation<>(script, resultType, callback, this.logger);
+        TurbolinksHelper.evaluateJavascript(this.applicationContext, this.webView, evaluation);
+        return evaluation;
+    }
+
     /**
      * <p>Determines whether screenshots are displayed (instead of a progress view) when resuming
      * an activity. Default is true.</p>
@@ -883,6 +1320,138 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         screenshotsEnabled = enabled;
     }
     
+    /**
+     * <p>Sets how screenshots are captured when the WebView moves to a new TurbolinksView:
+     * synchronously or with PixelCopy, at what scale, and with which bitmap config. Only used
+     * while screenshots are enabled.</p>
+     *
+     * @param options The screenshot options, or null to restore the defaults.
+     */
+    public void setScreenshotOptions(TurbolinksScreenshotOptions options) {
+        screenshotOptions = options != null ? options : new TurbolinksScreenshotOptions();
+    }
+    
+    /**
+     * <p>Determines whether a visit's cached snapshot is loaded before its network request is
+     * issued, so the snapshot paints as early as possible. Default is true.</p>
+     *
+     * @param enabled If true the cached snapshot is loaded before the request is issued.
+     */
+    public void setLoadCachedSnapshotFirst(boolean enabled) {
+        loadCachedSnapshotFirst = enabled;
+    }
+    
+    /**
+     * <p>Enables the native disk cache for the responses Turbolinks requests when it advances or
+     * replaces a visit. Cached responses are revalidated with their ETag or Last-Modified header,
+     * and a 304 is answered from disk. Requires Lollipop or above. Default is false.</p>
+     *
+     * <p>The cache is shared by all sessions, see {@link TurbolinksResponseCache#getInstance(Context)}
+     * to change its size or clear it.</p>
+     *
+     * @param enabled If true Turbolinks visit requests go through the response cache.
+     */
+    public void setResponseCacheEnabled(boolean enabled) {
+        responseCacheEnabled = enabled;
+    }
+    
+    /**
+     * <p>Shows a screenshot of the last visit to a location while a cold boot loads it, for
+     * instance the first screen after process death. Screenshots are downscaled, compressed and
+     * stored on disk in the background when a visit completes. Default is false.</p>
+     *
+     * <p>The store is shared by all sessions, see {@link TurbolinksPlaceholderStore#getInstance(Context)}
+     * to change its size and staleness limit. Screenshots may show private data, call
+     * {@link #clearUserData(Context)} when the user signs out.</p>
+     *
+     * @param enabled If true cold visits show the stored placeholder of their location.
+     */
+    public void setPlaceholdersEnabled(boolean enabled) {
+        placeholdersEnabled = enabled;
+    }
+    
+    /**
+     * <p>Enables prefetching of same-origin links as they scroll into view. The bridge reports
+     * visible links, which are fetched at background priority and kept in memory until a visit
+     * to them is made. Requires Lollipop or above. Default is false.</p>
+     *
+     * @param enabled If true visible links are prefetched.
+     */
+    public void setPrefetchEnabled(boolean enabled) {
+        prefetchEnabled = enabled;
+        if (!enabled) {
+            prefetcher.clear();
+        }
+    }
+    
+    /**
+     * <p>Sets how many links may be prefetched at the same time. Default is 2.</p>
+     *
+     * @param maxConcurrency The number of concurrent prefetches, at least 1.
+     */
+    public void setPrefetchMaxConcurrency(int maxConcurrency) {
+        prefetcher.setMaxConcurrency(maxConcurrency);
+    }
+    
+    /**
+     * <p>Sets how many bytes of prefetched responses are kept in memory. The least recently
+     * prefetched responses are dropped first. Default is 2 MB.</p>
+     *
+     * @param byteBudget The byte budget, 0 or more.
+     */
+    public void setPrefetchByteBudget(long byteBudget) {
+        prefetcher.setByteBudget(byteBudget);
+    }
+    
+    /**
+     * <p>Sets the lowest level this session logs at, to logcat and to its
+     * {@link TurbolinksDebugCallback}. Statements below it are dropped before their message is
+     * built. Default is {@link Log#DEBUG}.</p>
+     *
+     * @param minLevel One of the {@link Log} levels, e.g. {@link Log#ERROR}.
+     */
+    public void setLogLevel(int minLevel) {
+        logger.setMinLevel(minLevel);
+    }
+    
+    /**
+     * <p>Sets a listener that receives the lifecycle timestamps of every finished visit, from the
+     * proposal to the rendered response. Nothing is recorded while no listener is set.</p>
+     *
+     * @param listener The listener, or null to stop recording.
+     */
+    public void setVisitMetricsListener(TurbolinksVisitMetricsListener listener) {
+        visitMetricsListener = listener;
+        if (listener == null) {
+            synchronized (visitMetrics) {
+                visitMetrics.clear();
+            }
+        }
+    }
+    
+    /**
+     * <p>Returns how the response cache answered the requests of the current, or most recently
+     * started, visit.</p>
+     *
+     * @return The cache stats of the visit, guaranteed to not be null.
+     */
+    public TurbolinksVisitCacheStats getVisitCacheStats() {
+        return visitCacheStats;
+    }
+    
+    /**
+     * <p>Sets how long a visit can load before the progress indicator is shown. Visits that
+     * finish sooner never show it. Default is 500 ms.</p>
+     *
+     * @param delayMillis The delay in milliseconds, 0 to show the indicator right away.
+     */
+    public void setProgressIndicatorDelay(int delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("The progress indicator delay must not be negative.");
+        }
+        this.progressIndicatorDelay = delayMillis;
+    }
+
     /**
      * <p>Determines whether WebViews can be refreshed by pulling/swiping from the top
      * of the WebView. Default is true.</p>
@@ -891,6 +1460,79 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      */
     public void setPullToRefreshEnabled(boolean enabled) {
         pullToRefreshEnabled = enabled;
+        updateRefreshEnabled();
+    }
+    
+    /**
+     * <p>Returns the scheduler that coalesces, drops and cancels visits, for its counts.</p>
+     *
+     * @return The session's visit scheduler, guaranteed to not be null.
+     */
+    public TurbolinksVisitScheduler getVisitScheduler() {
+        return visitScheduler;
+    }
+    
+    /**
+     * <p>Sets a listener that receives the WebView's scroll position and velocity, at most once
+     * per frame. Pass null to remove it.</p>
+     *
+     * @param listener The listener, may be null.
+     */
+    public void setScrollListener(TurbolinksScrollListener listener) {
+        scrollListener = listener;
+    }
+    
+    /**
+     * <p>Sets a listener that receives the page height, scroll position and title whenever the
+     * bridge reports a change. Pass null to remove it.</p>
+     *
+     * @param listener The listener, may be null.
+     */
+    public void setPageMetricsListener(TurbolinksPageMetricsListener listener) {
+        pageMetricsListener = listener;
+    }
+    
+    /**
+     * <p>Restores the restoration identifier an activity saved with its instance state, so its
+     * first visit after process death can restore the page from Turbolinks' snapshot cache. Call
+     * from {@code onCreate} with the saved instance state.</p>
+     *
+     * <p>Identifiers are saved automatically once the session has seen the activity, and dropped
+     * when the activity finishes.</p>
+     *
+     * @param activity           The activity being created.
+     * @param savedInstanceState The saved instance state passed to {@code onCreate}, may be null.
+     */
+    public void restoreInstanceState(Activity activity, Bundle savedInstanceState) {
+        restorationStore.restore(activity, savedInstanceState);
+    }
+    
+    /**
+     * <p>Saves the activity's restoration identifier to its instance state. Only needed for
+     * activities the session hasn't registered lifecycle callbacks for yet.</p>
+     *
+     * @param activity The activity being saved.
+     * @param outState The bundle passed to {@code onSaveInstanceState}.
+     */
+    public void saveInstanceState(Activity activity, Bundle outState) {
+        restorationStore.save(activity, outState);
+    }
+    
+    /**
+     * <p>Cold boots from an app shell instead of the network. The shell is an HTML asset that
+     * loads Turbolinks itself; the bridge is inlined into it. It's loaded with the origin of the
+     * visited location as its base URL, and the location is then visited with Turbolinks,
+     * replacing the shell, so the first paint doesn't wait for a full HTML response.</p>
+     *
+     * <p>The shell should reference the same tracked assets as the site. If Turbolinks reports
+     * the page as invalidated, the next cold boot loads the location from the network.</p>
+     *
+     * @param assetPath Path of the shell HTML relative to the assets directory, or null to cold
+     *                  boot from the network. Default is null.
+     */
+    public void setAppShellAsset(String assetPath) {
+        appShellAssetPath = assetPath;
+        appShellHtml = null;
     }
     
     /**
@@ -899,7 +1541,27 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @return True if Turbolinks has been fully loaded and detected on the page.
      */
     public boolean turbolinksIsReady() {
-        return turbolinksIsReady;
+        return state.is(TurbolinksSessionState.READY);
+    }
+
+    /**
+     * @return Where the session is in getting Turbolinks ready.
+     */
+    public TurbolinksSessionState getState() {
+        return state.get();
+    }
+
+    /**
+     * <p>Describes the session's most recent state transitions, for debugging.</p>
+     *
+     * @return One line per transition, oldest first.
+     */
+    public List<String> getStateTransitionLog() {
+        List<String> lines = new ArrayList<>();
+        for (TurbolinksSessionStateMachine.Transition transition : state.getTransitions()) {
+            lines.add(transition.toString());
+        }
+        return lines;
     }
 
     /**
@@ -909,11 +1571,11 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * @param action   Whether to treat the request as an advance (navigating forward) or a replace (back).
      */
     public void visitLocationWithAction(String location, String action) {
-        TurbolinksLog.d("call to visitLocationWithAction: loc = " + location + ", action = " + action,
-		        TurbolinksSession.this.debugCallback);
+        logger.d(TurbolinksLogEvent.VISIT_LOCATION_WITH_ACTION, location, action);
         this.location = location;
-        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", this.debugCallback,
-		        TurbolinksHelper.encodeUrl(location), action, getRestorationIdentifierFromMap());
+        visitScheduler.commit(location);
+        runJavascript("webView.visitLocationWithActionAndRestorationIdentifier", this.logger,
+		        TurbolinksHelper.encodeUrl(location), action, restorationStore.get(activity));
     }
 
     //endregion
@@ -924,17 +1586,13 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     // ---------------------------------------------------
 	
 	/**
-	 * If any temp logs stored in the SB have yet to be sent, this will send them out.
+	 * Sends the boot events recorded so far to the debug callback and logcat, if anyone is
+	 * listening. Otherwise they stay in the fixed-size boot event log.
 	 */
 	private void runTempLogsCheck(){
-		if(TurbolinksSession.tempSBHolder != null){
-			if(TurbolinksSession.tempSBHolder.length() > 0) {
-				if (TurbolinksLog.getDebugLoggingEnabled()) {
-					String str = "All inits complete. Stored Logs fired off during static initialization:\n"
-							+ TurbolinksSession.tempSBHolder.toString();
-					TurbolinksLog.d(str, TurbolinksSession.this.debugCallback);
-					TurbolinksSession.tempSBHolder = null;
-				}
+		if (logger.isLoggable(Log.DEBUG)) {
+			for (TurbolinksBootEvent event : bootEvents.drain()) {
+				TurbolinksLog.d("Boot event " + event, logger);
 			}
 		}
 	}
@@ -947,25 +1605,77 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             this.customHeaders = new HashMap<>();
         }
     }
+
+    /**
+     * <p>Publishes an immutable copy of the custom headers. The prefetch and response cache
+     * requests run on the JavaBridge and WebView IO threads, and read that copy instead of the
+     * map the main thread changes.</p>
+     */
+    private void publishCustomHeaders(){
+        this.customHeadersSnapshot = this.customHeaders != null
+                ? Collections.unmodifiableMap(new HashMap<>(this.customHeaders))
+                : Collections.<String, String>emptyMap();
+    }
     
     /**
-     * <p>Adds the restoration (cached scroll position) identifier to the local Hashmap.</p>
-     *
-     * @param value Restoration ID provided by Turbolinks.
+     * <p>Loads the current location in full, from the app shell if one is set and usable, otherwise
+     * from the network.</p>
      */
-    private void addRestorationIdentifierToMap(String value) {
-        if (activity != null) {
-            restorationIdentifierMap.put(activity.toString(), value);
+    void coldBoot() {
+        logger.d(TurbolinksLogEvent.VISIT_COLD_BOOT, this.location);
+        initCustomHeaders();
+
+        if (restoreSavedWebViewState()) {
+            TurbolinksLog.d("Cold booting from the saved WebView state", logger);
+            return;
         }
+
+        if (appShellAssetPath != null && !appShellBypassed) {
+            String origin = TurbolinksHelper.getOrigin(location);
+            String html = origin != null ? getAppShellHtml() : null;
+            if (html != null) {
+                TurbolinksLog.d("Cold booting from app shell " + appShellAssetPath, logger);
+                appShellBootInProgress = true;
+                webView.loadDataWithBaseURL(origin, html, "text/html", "UTF-8", origin);
+                return;
+            }
+        }
+
+        appShellBypassed = false;
+        appShellBootInProgress = false;
+        webView.loadUrl(this.location, this.customHeaders);
     }
 
     /**
-     * <p>Gets the restoration ID for the current activity.</p>
+     * <p>Restores the WebView state saved when this session's key was evicted, see
+     * {@link TurbolinksSessionManager}. The WebView reloads the current page of the restored
+     * history itself.</p>
      *
-     * @return Restoration ID for the current activity.
+     * @return True if the restored current page is the location being visited, so it doesn't have
+     * to be loaded.
      */
-    private String getRestorationIdentifierFromMap() {
-        return restorationIdentifierMap.get(activity.toString());
+    private boolean restoreSavedWebViewState() {
+        Bundle state = savedWebViewState;
+        savedWebViewState = null;
+        if (state == null) return false;
+
+        WebBackForwardList history = webView.restoreState(state);
+        WebHistoryItem current = history != null ? history.getCurrentItem() : null;
+        return current != null && TextUtils.equals(current.getUrl(), location);
+    }
+
+    /**
+     * @return The app shell HTML, read once per asset, or null if it can't be read.
+     */
+    private String getAppShellHtml() {
+        if (appShellHtml == null) {
+            try {
+                appShellHtml = TurbolinksHelper.getAppShellHtml(applicationContext, appShellAssetPath);
+            } catch (IOException e) {
+                TurbolinksLog.e("Error reading app shell " + appShellAssetPath + ": " + e.toString(), logger);
+            }
+        }
+        return appShellHtml;
     }
 
     /**
@@ -984,8 +1694,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
      * {@link #setTurbolinksIsReady(boolean)}</p>
      */
     private void visitCurrentLocationWithTurbolinks(String forcedAction) {
-        TurbolinksLog.d("Visiting current stored location: " + location,
-		        TurbolinksSession.this.debugCallback);
+        logger.d(TurbolinksLogEvent.VISIT_WITH_TURBOLINKS, location);
         visitLocationWithAction(location, forcedAction);
     }
 
@@ -1022,9 +1731,19 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
         return this.yPosition;
     }
     
+    /**
+     * @return The height of the page in pixels, as last reported by the bridge.
+     */
     public int getWebviewPageHeight(){
         return this.heightOfPage;
     }
+    
+    /**
+     * @return The title of the page, as last reported by the bridge. Empty until reported.
+     */
+    public String getWebviewPageTitle(){
+        return this.pageTitle;
+    }
     //endregion
     
     // ---------------------------------------------------
@@ -1052,48 +1771,51 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     class MyWebViewClient extends WebViewClient {
         @Override
         public void onPageStarted(WebView view, String url, Bitmap favicon) {
-            coldBootInProgress = true;
+            /**
+             * A new document is loading, so Turbolinks isn't ready until the bridge says so for
+             * that document, whichever way the bridge gets in.
+             */
+            if (!state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.COLD_BOOTING, "onPageStarted")) {
+                state.transition(TurbolinksSessionState.READY, TurbolinksSessionState.COLD_BOOTING, "onPageStarted");
+            }
         }
     
         @Override
         public void onPageFinished(WebView view, final String location) {
             TurbolinksLog.d("onPageFinished, loc == " + location,
-		            TurbolinksSession.this.debugCallback);
-            String jsCall = "window.webView == null";
-            webView.evaluateJavascript(jsCall, new ValueCallback<String>() {
+		            logger);
+            // The document start bridge skips anything but http(s) documents, e.g. file:// pages,
+            // which still get it injected below
+            if (bridgeScriptHandler != null && TurbolinksHelper.getOrigin(location) != null) {
+                // The bridge already ran at document start, no need to check for it. Its ready
+                // report may have arrived before onPageStarted moved the session out of READY
+                if (state.is(TurbolinksSessionState.COLD_BOOTING)) {
+                    TurbolinksHelper.runJavascriptRaw(applicationContext, webView, BRIDGE_READY_REPORT, logger);
+                }
+                TurbolinksSession.this.turbolinksAdapter.onPageFinished();
+                return;
+            }
+            evaluate("window.webView == null", Boolean.class, new TurbolinksEvaluationCallback<Boolean>() {
                 @Override
-                public void onReceiveValue(String s) {
-	                TurbolinksLog.d(("webView.evaluateJavascript from " + jsCall + ", response == "
-			                + s), TurbolinksSession.this.debugCallback);
-	                TurbolinksLog.d(("Attempting to inject bridge into Turbolinks Session. Is bridgeInjectionInProgress? "
-			                + bridgeInjectionInProgress), TurbolinksSession.this.debugCallback);
-                    if (parseBoolSafe(s) && !bridgeInjectionInProgress) {
-                        bridgeInjectionInProgress = true;
+                public void onResult(Boolean bridgeMissing, long roundTripMillis) {
+	                TurbolinksLog.d(("Bridge missing check response == " + bridgeMissing), logger);
+	                TurbolinksLog.d(("Attempting to inject bridge into Turbolinks Session. State == "
+			                + state.get()), logger);
+                    if (Boolean.TRUE.equals(bridgeMissing)
+                            && (state.transition(TurbolinksSessionState.COLD_BOOTING, TurbolinksSessionState.INJECTING_BRIDGE, "onPageFinished")
+                            || state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.INJECTING_BRIDGE, "onPageFinished"))) {
                         TurbolinksHelper.injectTurbolinksBridge(TurbolinksSession.this,
-		                        applicationContext, webView, debugCallback);
-                        TurbolinksLog.d("Bridge inject attempted", TurbolinksSession.this.debugCallback);
-	
-	                    TurbolinksSession.this.turbolinksAdapter.onPageFinished();
-                    } else {
-	                    TurbolinksSession.this.turbolinksAdapter.onPageFinished();
+		                        applicationContext, webView, logger);
+                        TurbolinksLog.d("Bridge inject attempted", logger);
                     }
+	                TurbolinksSession.this.turbolinksAdapter.onPageFinished();
+                }
+
+                @Override
+                public void onError(Exception exception) {
+	                TurbolinksSession.this.turbolinksAdapter.onPageFinished();
                 }
             });
-            try {
-	            TurbolinksSession.this.webView.evaluateJavascript(JAVASCRIPT_GET_WEB_PAGE_HEIGHT, new ValueCallback<String>() {
-                    @Override
-                    public void onReceiveValue(String value) {
-                        try {
-                            float f = Float.valueOf(value);
-                            float density = applicationContext.getResources().getDisplayMetrics().density;
-                            float x = (f * density);
-                            TurbolinksSession.this.heightOfPage = (int) x;
-                        } catch (Exception e){}
-                    }
-                });
-            } catch (Exception e){
-                e.printStackTrace();
-            }
         }
     
         /**
@@ -1106,7 +1828,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
          */
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, String location) {
-            if (!turbolinksIsReady || coldBootInProgress) {
+            if (!state.is(TurbolinksSessionState.READY)) {
                 try {
 //                    TurbolinksLog.d("Changing normal behavior, passing back up the adapter callback as reload");
 //                    turbolinksAdapter.visitProposedToLocationWithAction(location, ACTION_RELOAD);
@@ -1117,26 +1839,48 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
                     return false;
                 } catch (Exception e){
                     TurbolinksLog.d("Exception in shouldOverrideUrlLoading: " + e.getMessage(),
-		                    TurbolinksSession.this.debugCallback);
+		                    logger);
                 }
                 return false;
             }
         
-            /**
-             * Prevents firing twice in a row within a few milliseconds of each other, which
-             * happens. So we check for a slight delay between requests, which is plenty of time
-             * to allow for a user to click the same link again.
-             */
-            long currentOverrideTime = new Date().getTime();
-            if ((currentOverrideTime - previousOverrideTime) > 500) {
-                previousOverrideTime = currentOverrideTime;
-                TurbolinksLog.d("Overriding load: " + location, TurbolinksSession.this.debugCallback);
-                visitProposedToLocationWithAction(location, ACTION_ADVANCE);
-            }
+            // Repeated taps are coalesced or dropped by the visit scheduler
+            TurbolinksLog.d("Overriding load: " + location, logger);
+            visitProposedToLocationWithAction(location, ACTION_ADVANCE);
         
             return true;
         }
 	
+        /**
+         * Turbolinks visit requests are answered from prefetched responses and the native response
+         * cache when they are enabled.
+         * Everything else, including the cold boot page load, is left to the WebView.
+         */
+        @Override
+        @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            if ((!responseCacheEnabled && !prefetchEnabled) || request.isForMainFrame()
+                    || !TurbolinksResponseCache.isTurbolinksVisitRequest(request.getMethod(), request.getRequestHeaders())) {
+                return super.shouldInterceptRequest(view, request);
+            }
+
+            if (prefetchEnabled) {
+                WebResourceResponse prefetched = prefetcher.take(request.getUrl().toString(), customHeadersSnapshot);
+                if (prefetched != null) {
+                    TurbolinksLog.d("Serving prefetched response: " + request.getUrl(), logger);
+                    return prefetched;
+                }
+            }
+            if (!responseCacheEnabled) {
+                return super.shouldInterceptRequest(view, request);
+            }
+
+            WebResourceResponse response = TurbolinksResponseCache.getInstance(applicationContext).intercept(
+                    request.getUrl().toString(), request.getRequestHeaders(),
+                    customHeadersSnapshot, visitCacheStats, logger);
+            return response != null ? response : super.shouldInterceptRequest(view, request);
+        }
+
 	    @Override
 	    public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
 		    super.onReceivedError(view, errorCode, description, failingUrl);
@@ -1144,9 +1888,9 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
 		
 		    turbolinksAdapter.onReceivedError(errorCode);
 		    TurbolinksLog.d("onReceivedError. Code: " + errorCode + ", Description: " + description + ", Failing URL: " + failingUrl,
-				    TurbolinksSession.this.debugCallback);
+				    logger);
 		    TurbolinksLog.d("Webview error is being thrown from matches initially set webview? " + (view == TurbolinksSession.this.webView),
-				    TurbolinksSession.this.debugCallback);
+				    logger);
 	    }
     
         @Override
@@ -1157,7 +1901,7 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
             if (request.isForMainFrame()) {
                 resetToColdBoot();
                 turbolinksAdapter.onReceivedError(errorResponse.getStatusCode());
-                TurbolinksLog.d("onReceivedHttpError: " + errorResponse.getStatusCode(), TurbolinksSession.this.debugCallback);
+                TurbolinksLog.d("onReceivedHttpError: " + errorResponse.getStatusCode(), logger);
             }
         }
     }
@@ -1166,54 +1910,157 @@ public class TurbolinksSession implements TurbolinksScrollUpCallback {
     
     //region Private Custom Methods
     
+    /**
+     * Remembers when a visit was proposed, so it can be attached to the visit that starts next.
+     */
+    private void recordVisitProposed(String location, String action) {
+        if (visitMetricsListener == null) return;
+
+        synchronized (visitMetrics) {
+            proposedLocation = location;
+            proposedAction = action;
+            proposedNanos = SystemClock.elapsedRealtimeNanos();
+        }
+    }
+
+    private void recordVisitStarted(String visitIdentifier, boolean hasCachedSnapshot, double jsTimestamp) {
+        if (visitMetricsListener == null || visitIdentifier == null) return;
+
+        TurbolinksVisitMetrics metrics = new TurbolinksVisitMetrics(visitIdentifier);
+        synchronized (visitMetrics) {
+            if (proposedNanos >= 0) {
+                metrics.proposed(proposedLocation, proposedAction, proposedNanos);
+                proposedLocation = null;
+                proposedAction = null;
+                proposedNanos = -1;
+            }
+            metrics.started(hasCachedSnapshot, SystemClock.elapsedRealtimeNanos(), jsTimestamp);
+            visitMetrics.put(visitIdentifier, metrics);
+        }
+    }
+
+    private TurbolinksVisitMetrics visitMetricsFor(String visitIdentifier) {
+        if (visitMetricsListener == null || visitIdentifier == null) return null;
+
+        synchronized (visitMetrics) {
+            return visitMetrics.get(visitIdentifier);
+        }
+    }
+
+    /**
+     * Delivers the metrics on the main thread if the visit is finished.
+     */
+    private void finishVisitMetrics(final TurbolinksVisitMetrics metrics) {
+        synchronized (visitMetrics) {
+            if (!metrics.isFinished() || visitMetrics.remove(metrics.getVisitIdentifier()) == null) return;
+        }
+
+        TurbolinksHelper.runOnMainThread(applicationContext, "visitMetrics", new Runnable() {
+            @Override
+            public void run() {
+                TurbolinksVisitMetricsListener listener = visitMetricsListener;
+                if (listener != null) {
+                    listener.onVisitFinished(metrics);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Covers the webview with the custom progress view if one was given, otherwise the default one
+     */
+    private void showProgressView() {
+        if (turbolinksView == null) return;
+
+        if (progressView != null) {
+            turbolinksView.showProgress(progressView, progressIndicator, progressIndicatorDelay);
+        } else {
+            turbolinksView.showProgress(progressIndicatorDelay);
+        }
+    }
+
+    /**
+     * Shows the stored placeholder of the current location while a cold boot loads, if there is one
+     */
+    private void showPlaceholder() {
+        if (!placeholdersEnabled || turbolinksView == null) return;
+
+        final int generation = ++placeholderGeneration;
+        String key = TurbolinksPlaceholderStore.keyFor(location, turbolinksView.getScreenOrientation());
+        TurbolinksPlaceholderStore.getInstance(applicationContext).load(key, applicationContext,
+                new TurbolinksPlaceholderStore.Callback() {
+                    @Override
+                    public void onPlaceholderLoaded(Bitmap placeholder) {
+                        // The page rendered first, or the session moved on
+                        if (generation != placeholderGeneration || turbolinksView == null) {
+                            TurbolinksBitmapPool.getInstance().put(placeholder);
+                            return;
+                        }
+                        turbolinksView.showPlaceholder(placeholder);
+                    }
+                });
+    }
+
+    /**
+     * Stores a screenshot of the rendered page as the placeholder of the current location
+     */
+    private void capturePlaceholder() {
+        if (!placeholdersEnabled || turbolinksView == null || TextUtils.isEmpty(location)) return;
+
+        String key = TurbolinksPlaceholderStore.keyFor(location, turbolinksView.getScreenOrientation());
+        TurbolinksPlaceholderStore store = TurbolinksPlaceholderStore.getInstance(applicationContext);
+        if (store.wasCapturedRecently(key, SystemClock.elapsedRealtime())) return;
+
+        turbolinksView.capturePlaceholder(key, store);
+    }
+
     private void stopRefreshing(){
         try {
-            this.turbolinksView.getRefreshLayout().setRefreshing(false);
+            TurbolinksSwipeRefreshLayout refreshLayout = this.turbolinksView.getRefreshLayout();
+            if (refreshLayout.isRefreshing()) {
+                refreshLayout.setRefreshing(false);
+            }
         } catch (Exception e){}
     }
     
     
     /**
-     * Set the webview scroll listener
+     * Tracks the webview scroll position, toggling pull to refresh when it reaches or leaves the top
      */
     private void setWebviewScrollListener(){
         if(this.webView == null){
-            TurbolinksLog.d("Attempted to setWebviewScrollListener, but webview null", TurbolinksSession.this.debugCallback);
+            TurbolinksLog.d("Attempted to setWebviewScrollListener, but webview null", logger);
             return;
         }
-        TurbolinksLog.d("Setting setWebviewScrollListener", TurbolinksSession.this.debugCallback);
-        this.webView.getViewTreeObserver().addOnScrollChangedListener(
-                new ViewTreeObserver.OnScrollChangedListener() {
-                    @Override
-                    public void onScrollChanged() {
-                        if(webView.getScrollY() == 0){
-                            //At top
-                            try {
-                                TurbolinksSession.this.turbolinksView.getRefreshLayout().setEnabled(true);
-                                TurbolinksSession.this.isAtTop = true;
-                            } catch (Exception e){}
-                        } else {
-                            //Not at top
-                            try {
-                                TurbolinksSession.this.turbolinksView.getRefreshLayout().setEnabled(false);
-                                TurbolinksSession.this.isAtTop = false;
-                            } catch (Exception e){}
-                        }
-                    }
-                });
+        TurbolinksLog.d("Setting setWebviewScrollListener", logger);
+        this.scrollTracker = new TurbolinksScrollTracker(this.webView, new TurbolinksScrollTracker.Callback() {
+            @Override
+            public void onAtTopChanged(boolean atTop) {
+                TurbolinksSession.this.isAtTop = atTop;
+                updateRefreshEnabled();
+            }
+
+            @Override
+            public void onScrolled(int scrollX, int scrollY, float velocityY) {
+                TurbolinksSession.this.xPosition = scrollX;
+                TurbolinksSession.this.yPosition = scrollY;
+                TurbolinksScrollListener listener = scrollListener;
+                if (listener != null) {
+                    listener.onScrollChanged(scrollX, scrollY, velocityY);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Pull to refresh is only enabled while it is allowed and the webview is at the top
+     */
+    private void updateRefreshEnabled(){
+        if(this.turbolinksView == null || this.turbolinksView.getRefreshLayout() == null){
+            return;
+        }
+        this.turbolinksView.getRefreshLayout().setEnabled(pullToRefreshEnabled && isAtTop);
     }
     
     //endregion
-	
-	//region Misc Utils
-	
-	private static boolean parseBoolSafe(@Nullable String bool){
-		try {
-			return Boolean.parseBoolean(bool);
-		} catch (Exception e){
-			return false;
-		}
-	}
-	
-	//endregion
 }
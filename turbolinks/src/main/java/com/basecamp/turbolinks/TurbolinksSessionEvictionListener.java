@@ -0,0 +1,18 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Told when a {@link TurbolinksSessionManager} evicts a session to stay within its memory
+ * budget. Set with
+ * {@link TurbolinksSessionManager#setEvictionListener(TurbolinksSessionEvictionListener)}.</p>
+ */
+public interface TurbolinksSessionEvictionListener {
+    /**
+     * <p>Called on the main thread after the session was cleared. The session must not be used
+     * anymore; drop any reference to it and call {@link TurbolinksSessionManager#get(String)} for
+     * the key when it is needed again.</p>
+     *
+     * @param key     The key of the evicted session.
+     * @param session The evicted, cleared session.
+     */
+    void onSessionEvicted(String key, TurbolinksSession session);
+}
@@ -0,0 +1,277 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.webkit.WebView;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Owns a set of {@link TurbolinksSession}s keyed by the app, for example one per tab or per
+ * origin, and keeps their approximate memory cost within a budget.</p>
+ *
+ * <p>A session's cost is estimated as one WebView plus the screenshot its view currently holds.
+ * When the total exceeds the budget, the least recently used sessions are evicted: their location
+ * and their WebView's back/forward state are saved, their WebView is released with
+ * {@link TurbolinksSession#clearInstance()}, and the
+ * {@link TurbolinksSessionEvictionListener} is told. The next {@link #get(String)} for an evicted
+ * key returns a new session whose {@link TurbolinksSession#getLocation()} is that location. Its
+ * cold boot restores the saved WebView state, so the history is back and the page comes from
+ * the WebView's cache where possible.</p>
+ *
+ * <p>The session returned last is never evicted, nor is a session whose view is attached to a
+ * window. Must be used on the main thread.</p>
+ */
+public final class TurbolinksSessionManager {
+    /**
+     * Rough cost of a WebView with a loaded page, excluding its renderer process.
+     */
+    public static final long WEBVIEW_COST_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_SAVED_SESSIONS = 64;
+
+    private final Context applicationContext;
+    private final LinkedHashMap<String, TurbolinksSession> sessions = new LinkedHashMap<>(8, 0.75f, true);
+    private final LinkedHashMap<String, SavedSession> savedSessions = new LinkedHashMap<String, SavedSession>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SavedSession> eldest) {
+            return size() > MAX_SAVED_SESSIONS;
+        }
+    };
+    private TurbolinksSessionEvictionListener evictionListener;
+    private long memoryBudgetBytes;
+    private long hitCount;
+    private long missCount;
+    private long restoreCount;
+    private long evictionCount;
+
+    /**
+     * <p>What is kept of an evicted session.</p>
+     */
+    private static final class SavedSession {
+        final String location;
+        final Bundle webViewState;
+
+        SavedSession(String location, Bundle webViewState) {
+            this.location = location;
+            this.webViewState = webViewState;
+        }
+    }
+
+    /**
+     * @param context           Any Android context.
+     * @param memoryBudgetBytes The approximate memory the sessions may use together.
+     */
+    public TurbolinksSessionManager(Context context, long memoryBudgetBytes) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context must not be null.");
+        }
+        this.applicationContext = context.getApplicationContext();
+        setMemoryBudgetBytes(memoryBudgetBytes);
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Returns the session for the key, creating it if there is none, and evicts other sessions
+     * if the budget is now exceeded.</p>
+     *
+     * @param key Identifies the session, for example a tab or an origin.
+     * @return The session, guaranteed to not be null.
+     */
+    public TurbolinksSession get(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Session key must not be null.");
+        }
+
+        TurbolinksSession session = sessions.get(key);
+        if (session != null) {
+            hitCount++;
+            return session;
+        }
+
+        missCount++;
+        session = TurbolinksSession.getNew(applicationContext);
+        SavedSession saved = savedSessions.remove(key);
+        if (saved != null) {
+            session.location = saved.location;
+            session.savedWebViewState = saved.webViewState;
+            restoreCount++;
+        }
+        sessions.put(key, session);
+        trimToBudget();
+        return session;
+    }
+
+    /**
+     * @param key Identifies the session.
+     * @return The session for the key, or null if there is none. Doesn't count as a use.
+     */
+    public TurbolinksSession peek(String key) {
+        for (Map.Entry<String, TurbolinksSession> entry : sessions.entrySet()) {
+            if (entry.getKey().equals(key)) return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * <p>Clears and forgets the session for the key, including its saved state.</p>
+     *
+     * @param key Identifies the session.
+     */
+    public void remove(String key) {
+        TurbolinksSession session = sessions.remove(key);
+        if (session != null) {
+            session.clearInstance();
+        }
+        savedSessions.remove(key);
+    }
+
+    /**
+     * <p>Clears and forgets every session.</p>
+     */
+    public void clear() {
+        for (TurbolinksSession session : sessions.values()) {
+            session.clearInstance();
+        }
+        sessions.clear();
+        savedSessions.clear();
+    }
+
+    /**
+     * @param evictionListener Told when a session is evicted, may be null.
+     */
+    public void setEvictionListener(TurbolinksSessionEvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * <p>Evicts least recently used sessions until the sessions fit the budget, or only the most
+     * recently used one is left. Call after screenshots were taken to account for them.</p>
+     */
+    public void trimToBudget() {
+        trimToSize(memoryBudgetBytes);
+    }
+
+    /**
+     * @param memoryBudgetBytes The approximate memory the sessions may use together. Sessions are
+     *                          evicted right away if they no longer fit.
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive.");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        trimToBudget();
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * @return The estimated memory of all live sessions: WebViews plus screenshots.
+     */
+    public long getApproximateMemoryBytes() {
+        long total = 0;
+        for (TurbolinksSession session : sessions.values()) {
+            total += costOf(session);
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of live sessions.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return The number of {@link #get(String)} calls that returned a live session.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of {@link #get(String)} calls that created a session.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The number of created sessions that got the location of an evicted one.
+     */
+    public long getRestoreCount() {
+        return restoreCount;
+    }
+
+    /**
+     * @return The number of sessions evicted to stay within the budget.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    void trimToSize(long maxBytes) {
+        long total = getApproximateMemoryBytes();
+        int remaining = sessions.size();
+        Iterator<Map.Entry<String, TurbolinksSession>> iterator = sessions.entrySet().iterator();
+
+        // Iteration is least recently used first; the last entry is the one in use
+        while (total > maxBytes && iterator.hasNext() && remaining-- > 1) {
+            Map.Entry<String, TurbolinksSession> eldest = iterator.next();
+            TurbolinksSession session = eldest.getValue();
+            if (isShown(session)) continue;
+
+            total -= costOf(session);
+            if (session.location != null) {
+                savedSessions.put(eldest.getKey(), new SavedSession(session.location, saveWebViewState(session)));
+            }
+            iterator.remove();
+            session.clearInstance();
+            evictionCount++;
+
+            if (evictionListener != null) {
+                evictionListener.onSessionEvicted(eldest.getKey(), session);
+            }
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * A session whose view is on screen, or in a window the app may show again at any time, is
+     * still in use even if it wasn't returned recently.
+     */
+    private static boolean isShown(TurbolinksSession session) {
+        return session.turbolinksView != null && session.turbolinksView.isAttachedToWindow();
+    }
+
+    private static Bundle saveWebViewState(TurbolinksSession session) {
+        WebView webView = session.getWebView();
+        if (webView == null) return null;
+
+        Bundle state = new Bundle();
+        return webView.saveState(state) != null ? state : null;
+    }
+
+    private static long costOf(TurbolinksSession session) {
+        long cost = session.getWebView() != null ? WEBVIEW_COST_BYTES : 0;
+        if (session.turbolinksView != null) {
+            cost += session.turbolinksView.getScreenshotByteCount();
+        }
+        return cost;
+    }
+}
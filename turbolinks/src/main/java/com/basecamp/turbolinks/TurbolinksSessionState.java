@@ -0,0 +1,23 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Where a session is in getting Turbolinks ready in its WebView.</p>
+ */
+public enum TurbolinksSessionState {
+    /**
+     * Nothing is loaded; the next visit cold boots.
+     */
+    IDLE,
+    /**
+     * A page is loading in full; visits wait for it.
+     */
+    COLD_BOOTING,
+    /**
+     * The page has loaded and the bridge is being injected into it.
+     */
+    INJECTING_BRIDGE,
+    /**
+     * The bridge found Turbolinks; visits go through Turbolinks.
+     */
+    READY
+}
@@ -0,0 +1,107 @@
+package com.basecamp.turbolinks;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Holds a session's {@link TurbolinksSessionState}. It is read and changed from both the main
+ * thread and the WebView's JavaBridge thread, so every change is a compare-and-set: whichever
+ * thread wins a transition is the only one that acts on it.</p>
+ *
+ * <p>The last {@link #LOG_CAPACITY} transitions are kept, oldest overwritten first, to explain
+ * how a session got into its state.</p>
+ */
+final class TurbolinksSessionStateMachine {
+    static final int LOG_CAPACITY = 32; // Must be a power of two
+
+    /**
+     * <p>One entry of the transition log.</p>
+     */
+    static final class Transition {
+        final TurbolinksSessionState from;
+        final TurbolinksSessionState to;
+        final String cause;
+        final long timestampNanos;
+
+        Transition(TurbolinksSessionState from, TurbolinksSessionState to, String cause, long timestampNanos) {
+            this.from = from;
+            this.to = to;
+            this.cause = cause;
+            this.timestampNanos = timestampNanos;
+        }
+
+        @Override
+        public String toString() {
+            return from + " -> " + to + " (" + cause + ") @" + timestampNanos;
+        }
+    }
+
+    private final AtomicReference<TurbolinksSessionState> state =
+            new AtomicReference<>(TurbolinksSessionState.IDLE);
+    private final AtomicReferenceArray<Transition> log = new AtomicReferenceArray<>(LOG_CAPACITY);
+    private final AtomicLong logCursor = new AtomicLong();
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    TurbolinksSessionState get() {
+        return state.get();
+    }
+
+    boolean is(TurbolinksSessionState expected) {
+        return state.get() == expected;
+    }
+
+    /**
+     * @return True if the state was {@code from} and is now {@code to}.
+     */
+    boolean transition(TurbolinksSessionState from, TurbolinksSessionState to, String cause) {
+        if (!state.compareAndSet(from, to)) return false;
+
+        record(from, to, cause);
+        return true;
+    }
+
+    /**
+     * <p>Moves to the state whatever the current one is.</p>
+     *
+     * @return The state before the move.
+     */
+    TurbolinksSessionState moveTo(TurbolinksSessionState to, String cause) {
+        TurbolinksSessionState from = state.getAndSet(to);
+        if (from != to) {
+            record(from, to, cause);
+        }
+        return from;
+    }
+
+    /**
+     * @return The logged transitions, oldest first.
+     */
+    List<Transition> getTransitions() {
+        long end = logCursor.get();
+        long start = Math.max(0, end - LOG_CAPACITY);
+        List<Transition> transitions = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Transition transition = log.get((int) (i & (LOG_CAPACITY - 1)));
+            if (transition != null) transitions.add(transition);
+        }
+        return transitions;
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    private void record(TurbolinksSessionState from, TurbolinksSessionState to, String cause) {
+        long index = logCursor.getAndIncrement();
+        log.set((int) (index & (LOG_CAPACITY - 1)),
+                new Transition(from, to, cause, SystemClock.elapsedRealtimeNanos()));
+    }
+}
@@ -2,14 +2,22 @@ package com.basecamp.turbolinks;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.PixelCopy;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
 import android.webkit.WebView;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
@@ -30,10 +38,36 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
  */
 public class TurbolinksView extends FrameLayout  {
     private TurbolinksSwipeRefreshLayout refreshLayout = null;
+    private TurbolinksScreenshotOptions placeholderOptions = null;
     private View progressView = null;
+    private View progressIndicator = null;
+    private View defaultProgressView = null;
+    private final Runnable revealProgressIndicator = new Runnable() {
+        @Override
+        public void run() {
+            if (progressIndicator != null) {
+                progressIndicator.setVisibility(View.VISIBLE);
+            }
+        }
+    };
     private ImageView screenshotView = null;
+    private Bitmap screenshotBitmap = null;
     private int screenshotOrientation = 0;
     private TurbolinksDebugCallback debugCallback;
+    private final ComponentCallbacks2 trimCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {}
+    };
     
     // ---------------------------------------------------
     // Constructors
@@ -94,6 +128,19 @@ public class TurbolinksView extends FrameLayout  {
         addView(refreshLayout, 0);
     }
     
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().getApplicationContext().registerComponentCallbacks(trimCallbacks);
+    }
+    
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(revealProgressIndicator);
+        getContext().getApplicationContext().unregisterComponentCallbacks(trimCallbacks);
+        super.onDetachedFromWindow();
+    }
+    
     /**
      * Manually add a refresh listener to take actions against
      * @param swipeRefreshListener {@link androidx.swiperefreshlayout.widget.SwipeRefreshLayout.OnRefreshListener}
@@ -134,41 +181,128 @@ public class TurbolinksView extends FrameLayout  {
      * loading. When resuming an activity in the navigation stack, a screenshot is displayed while the
      * webview is restoring its snapshot.</p>
      * <p>Progress indicator is set to a specified delay before displaying -- a very short delay
-     * (like 500 ms) can improve perceived loading time to the user.</p>
+     * (like 500 ms) can improve perceived loading time to the user. The reveal is cancelled by
+     * {@link #hideProgress()}, so a visit that finishes within the delay never shows it.</p>
      *
      * @param progressView      The progressView to display on top of TurbolinksView.
      * @param progressIndicator The progressIndicator to display in the view.
      * @param delay             The delay before showing the progressIndicator in the view. The default progress view
      *                          is 500 ms.
      */
-    void showProgress(final View progressView, final View progressIndicator, int delay) {
-        TurbolinksLog.d("showProgress called", TurbolinksView.this.debugCallback);
-        
+    void showProgress(View progressView, View progressIndicator, int delay) {
         // Don't show the progress view if a screenshot is available
         if (screenshotView != null && screenshotOrientation == getOrientation()) return;
-        
+
+        // Already covering the webview, keep the reveal that is running
+        if (progressView == this.progressView && progressView.getParent() == this) return;
+
+        TurbolinksLog.d("showProgress called", TurbolinksView.this.debugCallback);
         hideProgress();
-        
+
         this.progressView = progressView;
+        this.progressIndicator = progressIndicator;
+        if (progressView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) progressView.getParent()).removeView(progressView);
+        }
         progressView.setClickable(true);
         addView(progressView);
-        
-        progressIndicator.setVisibility(View.GONE);
-        
-        final Handler handler = new Handler();
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                progressIndicator.setVisibility(View.VISIBLE);
-            }
-        }, delay);
+
+        if (delay > 0) {
+            progressIndicator.setVisibility(View.GONE);
+            postDelayed(revealProgressIndicator, delay);
+        } else {
+            progressIndicator.setVisibility(View.VISIBLE);
+        }
     }
-    
+
+    /**
+     * <p>Same as {@link #showProgress(View, View, int)}, with the library's default progress view.
+     * The default view is inflated once and reused by every visit shown in this view.</p>
+     *
+     * @param delay The delay before showing the progress indicator in the view.
+     */
+    void showProgress(int delay) {
+        if (defaultProgressView == null) {
+            defaultProgressView = LayoutInflater.from(getContext()).inflate(R.layout.turbolinks_progress, this, false);
+            defaultProgressView.setBackground(getBackground());
+        }
+        showProgress(defaultProgressView, defaultProgressView.findViewById(R.id.turbolinks_default_progress_indicator), delay);
+    }
+
+    /**
+     * <p>Covers the webview with a placeholder read from the {@link TurbolinksPlaceholderStore},
+     * the same way a screenshot is shown. It is removed by {@link #hideProgress()}. Ignored if a
+     * screenshot is already shown.</p>
+     *
+     * @param placeholder The placeholder, handed to the {@link TurbolinksBitmapPool} once removed.
+     */
+    void showPlaceholder(Bitmap placeholder) {
+        if (screenshotView != null) {
+            TurbolinksBitmapPool.getInstance().put(placeholder);
+            return;
+        }
+
+        addScreenshotView(placeholder);
+        TurbolinksLog.d("Placeholder shown", TurbolinksView.this.debugCallback);
+    }
+
+    /**
+     * <p>Captures the webview content into a downscaled bitmap and hands it to the store as the
+     * placeholder for the key. On API 26+ the pixels are copied from the window with PixelCopy,
+     * off the main thread; older versions draw the view on the main thread. Nothing is captured
+     * while the webview is covered.</p>
+     *
+     * @param key   The placeholder key, see {@link TurbolinksPlaceholderStore#keyFor(String, int)}.
+     * @param store The store that takes ownership of the screenshot.
+     */
+    void capturePlaceholder(String key, TurbolinksPlaceholderStore store) {
+        if (screenshotView != null || isProgressShowing() || getWidth() <= 0 || getHeight() <= 0) return;
+
+        if (placeholderOptions == null) {
+            // Built on first use, class loading must not touch Bitmap.Config on old API levels
+            placeholderOptions = new TurbolinksScreenshotOptions()
+                    .mode(TurbolinksScreenshotOptions.Mode.PIXEL_COPY)
+                    .scale(0.5f)
+                    .config(Bitmap.Config.RGB_565);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && getContext() instanceof Activity
+                && ((Activity) getContext()).getWindow() != null) {
+            Bitmap bitmap = obtainScreenshotBitmap(placeholderOptions.scaledSize(getWidth()),
+                    placeholderOptions.scaledSize(getHeight()), placeholderOptions.getConfig());
+            if (bitmap == null) return;
+
+            requestPlaceholderPixelCopy(((Activity) getContext()).getWindow(), bitmap, key, store);
+            return;
+        }
+
+        Bitmap screenshot = getScreenshotBitmap(placeholderOptions);
+        if (screenshot != null) {
+            store.put(key, screenshot);
+        }
+    }
+
+    /**
+     * @return The current orientation of the device, from {@code Configuration.orientation}.
+     */
+    int getScreenOrientation() {
+        return getOrientation();
+    }
+
+    /**
+     * @return True if a progress view is currently covering the webview.
+     */
+    boolean isProgressShowing() {
+        return progressView != null && progressView.getParent() == this;
+    }
+
     /**
      * <p>Removes the progress view and/or screenshot from the TurbolinksView, so the webview is
      * visible underneath.</p>
      */
     void hideProgress() {
+        removeCallbacks(revealProgressIndicator);
         removeProgressView();
         removeScreenshotView();
         try {
@@ -192,6 +326,20 @@ public class TurbolinksView extends FrameLayout  {
      * @return True if the webView has been attached to a new parent, otherwise false
      */
     boolean attachWebView(WebView webView, boolean screenshotsEnabled, boolean pullToRefreshEnabled) {
+        return attachWebView(webView, screenshotsEnabled ? new TurbolinksScreenshotOptions() : null,
+                pullToRefreshEnabled);
+    }
+    
+    /**
+     * <p>Attach the swipeRefreshLayout, which contains the shared webView, to the TurbolinksView.</p>
+     *
+     * @param webView              The shared webView.
+     * @param screenshotOptions    How to screenshot the previous view, or null if screenshots are
+     *                             disabled for the current session.
+     * @param pullToRefreshEnabled Indicates whether pull to refresh is enabled for the current session.
+     * @return True if the webView has been attached to a new parent, otherwise false
+     */
+    boolean attachWebView(WebView webView, TurbolinksScreenshotOptions screenshotOptions, boolean pullToRefreshEnabled) {
         if(this.refreshLayout == null) {
             return false;
         }
@@ -205,7 +353,7 @@ public class TurbolinksView extends FrameLayout  {
             TurbolinksSwipeRefreshLayout previousRefreshLayout = (TurbolinksSwipeRefreshLayout) webView.getParent();
             TurbolinksView previousTurbolinksView = (TurbolinksView) previousRefreshLayout.getParent();
             
-            if (screenshotsEnabled) previousTurbolinksView.screenshotView();
+            if (screenshotOptions != null) previousTurbolinksView.screenshotView(screenshotOptions);
             
             try {
                 // This is an admittedly hacky workaround, but it buys us some time as we investigate
@@ -245,6 +393,8 @@ public class TurbolinksView extends FrameLayout  {
         if (progressView == null) return;
         
         removeView(progressView);
+        progressView = null;
+        progressIndicator = null;
         TurbolinksLog.d("Progress view removed", TurbolinksView.this.debugCallback);
     }
     
@@ -255,46 +405,228 @@ public class TurbolinksView extends FrameLayout  {
         if (screenshotView == null) return;
         
         removeView(screenshotView);
+        screenshotView.setImageBitmap(null);
         screenshotView = null;
+        TurbolinksBitmapPool.getInstance().put(screenshotBitmap);
+        screenshotBitmap = null;
         TurbolinksLog.d("Screenshot removed", TurbolinksView.this.debugCallback);
     }
     
     /**
      * <p>Creates a screenshot of the current webview content and makes it the top visible view.</p>
+     *
+     * @param options How to capture the screenshot.
      */
-    private void screenshotView() {
+    private void screenshotView(TurbolinksScreenshotOptions options) {
         // Only take a screenshot if the activity is not finishing
         if (getContext() instanceof Activity && ((Activity) getContext()).isFinishing()) return;
         
-        Bitmap screenshot = getScreenshotBitmap();
+        // Release any screenshot still on screen so it can be reused
+        removeScreenshotView();
+        
+        if (getWidth() <= 0 || getHeight() <= 0) return;
+        
+        if (options.getMode() == TurbolinksScreenshotOptions.Mode.PIXEL_COPY
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && getContext() instanceof Activity
+                && ((Activity) getContext()).getWindow() != null) {
+            Bitmap bitmap = obtainScreenshotBitmap(options.scaledSize(getWidth()), options.scaledSize(getHeight()), options.getConfig());
+            if (bitmap == null) return;
+            
+            addScreenshotView(null);
+            requestPixelCopy(((Activity) getContext()).getWindow(), bitmap, options, screenshotView);
+            TurbolinksLog.d("Screenshot requested", TurbolinksView.this.debugCallback);
+            return;
+        }
+        
+        Bitmap screenshot = getScreenshotBitmap(options);
         if (screenshot == null) return;
         
+        addScreenshotView(finishScreenshotBitmap(screenshot, options));
+        TurbolinksLog.d("Screenshot taken", TurbolinksView.this.debugCallback);
+    }
+    
+    /**
+     * <p>Adds an ImageView that covers the webview and shows the given screenshot.</p>
+     *
+     * @param screenshot The screenshot to show, or null if it will be set once captured.
+     */
+    private void addScreenshotView(Bitmap screenshot) {
         screenshotView = new ImageView(getContext());
         screenshotView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        screenshotView.setScaleType(ImageView.ScaleType.FIT_XY);
         screenshotView.setClickable(true);
         screenshotView.setImageBitmap(screenshot);
+        screenshotBitmap = screenshot;
         screenshotOrientation = getOrientation();
         
         addView(screenshotView);
-        
-        TurbolinksLog.d("Screenshot taken", TurbolinksView.this.debugCallback);
     }
     
     /**
-     * <p>Creates a bitmap screenshot of the webview contents from the canvas.</p>
+     * <p>Creates a bitmap screenshot of the webview contents from the canvas, scaled down as
+     * requested.</p>
      *
+     * @param options How to capture the screenshot.
      * @return The screenshot of the webview contents.
      */
-    private Bitmap getScreenshotBitmap() {
-        if (!hasEnoughHeapMemoryForScreenshot()) return null;
-        
+    Bitmap getScreenshotBitmap(TurbolinksScreenshotOptions options) {
         if (getWidth() <= 0 || getHeight() <= 0) return null;
         
-        Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        draw(new Canvas(bitmap));
+        Bitmap bitmap = obtainScreenshotBitmap(options.scaledSize(getWidth()), options.scaledSize(getHeight()), options.getConfig());
+        if (bitmap == null) return null;
+        
+        Canvas canvas = new Canvas(bitmap);
+        if (options.getScale() < 1f) {
+            canvas.scale((float) bitmap.getWidth() / getWidth(), (float) bitmap.getHeight() / getHeight());
+        }
+        draw(canvas);
+        return bitmap;
+    }
+    
+    /**
+     * <p>Gets a bitmap to capture a screenshot into. A released screenshot of the same size is
+     * reused from the {@link TurbolinksBitmapPool} when available.</p>
+     *
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     * @param config Bitmap config.
+     * @return A mutable bitmap, or null if there isn't enough memory to create one.
+     */
+    private Bitmap obtainScreenshotBitmap(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = TurbolinksBitmapPool.getInstance().get(width, height, config);
+        if (bitmap == null) {
+            if (!hasEnoughHeapMemoryForScreenshot(4L * width * height)) return null;
+            
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
         return bitmap;
     }
     
+    /**
+     * <p>Moves a captured screenshot into a hardware bitmap if requested and supported, handing
+     * the software bitmap back to the pool.</p>
+     *
+     * @param bitmap  The captured screenshot.
+     * @param options How the screenshot was captured.
+     * @return The bitmap to display.
+     */
+    private Bitmap finishScreenshotBitmap(Bitmap bitmap, TurbolinksScreenshotOptions options) {
+        if (!options.isHardwareBitmap() || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return bitmap;
+        
+        Bitmap hardwareBitmap = bitmap.copy(Bitmap.Config.HARDWARE, false);
+        if (hardwareBitmap == null) return bitmap;
+        
+        TurbolinksBitmapPool.getInstance().put(bitmap);
+        return hardwareBitmap;
+    }
+    
+    /**
+     * <p>Copies this view's pixels from the window into the bitmap on the render thread. The
+     * result is shown in the target ImageView once the copy finishes, unless the screenshot has
+     * been removed in the meantime.</p>
+     *
+     * @param window  The window this view is displayed in.
+     * @param bitmap  The bitmap to copy into; PixelCopy scales to its size.
+     * @param options How the screenshot is captured.
+     * @param target  The screenshot view waiting for the copy.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private void requestPixelCopy(Window window, final Bitmap bitmap, final TurbolinksScreenshotOptions options,
+                                  final ImageView target) {
+        try {
+            PixelCopy.request(window, getWindowRect(), bitmap, new PixelCopy.OnPixelCopyFinishedListener() {
+                @Override
+                public void onPixelCopyFinished(int result) {
+                    if (screenshotView != target || result != PixelCopy.SUCCESS) {
+                        TurbolinksLog.d("Screenshot discarded, PixelCopy result: " + result, TurbolinksView.this.debugCallback);
+                        TurbolinksBitmapPool.getInstance().put(bitmap);
+                        if (screenshotView == target) removeScreenshotView();
+                        return;
+                    }
+                    
+                    screenshotBitmap = finishScreenshotBitmap(bitmap, options);
+                    target.setImageBitmap(screenshotBitmap);
+                    TurbolinksLog.d("Screenshot taken", TurbolinksView.this.debugCallback);
+                }
+            }, getHandler() != null ? getHandler() : new Handler(Looper.getMainLooper()));
+        } catch (IllegalArgumentException e) {
+            // The window has no surface to copy from
+            TurbolinksLog.d("PixelCopy failed: " + e.getMessage(), TurbolinksView.this.debugCallback);
+            TurbolinksBitmapPool.getInstance().put(bitmap);
+            removeScreenshotView();
+        }
+    }
+    
+    /**
+     * <p>Copies this view's pixels from the window into the bitmap on the render thread, then
+     * hands the bitmap to the store, unless the webview got covered in the meantime.</p>
+     *
+     * @param window The window this view is displayed in.
+     * @param bitmap The bitmap to copy into; PixelCopy scales to its size.
+     * @param key    The placeholder key.
+     * @param store  The store that takes ownership of the screenshot.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private void requestPlaceholderPixelCopy(Window window, final Bitmap bitmap, final String key,
+                                             final TurbolinksPlaceholderStore store) {
+        try {
+            PixelCopy.request(window, getWindowRect(), bitmap, new PixelCopy.OnPixelCopyFinishedListener() {
+                @Override
+                public void onPixelCopyFinished(int result) {
+                    if (result != PixelCopy.SUCCESS || screenshotView != null || isProgressShowing()) {
+                        TurbolinksBitmapPool.getInstance().put(bitmap);
+                        return;
+                    }
+                    store.put(key, bitmap);
+                }
+            }, getHandler() != null ? getHandler() : new Handler(Looper.getMainLooper()));
+        } catch (IllegalArgumentException e) {
+            // The window has no surface to copy from
+            TurbolinksLog.d("Placeholder PixelCopy failed: " + e.getMessage(), TurbolinksView.this.debugCallback);
+            TurbolinksBitmapPool.getInstance().put(bitmap);
+        }
+    }
+
+    /**
+     * @return The bounds of this view in its window.
+     */
+    private Rect getWindowRect() {
+        int[] location = new int[2];
+        getLocationInWindow(location);
+        return new Rect(location[0], location[1], location[0] + getWidth(), location[1] + getHeight());
+    }
+
+    /**
+     * <p>Drops the screenshot when memory is low and nobody would see it: once the app's UI is
+     * hidden, or earlier if this view isn't shown. The bitmap is freed rather than pooled.</p>
+     *
+     * @param level The level passed to {@code onTrimMemory}.
+     * @return The number of bytes freed.
+     */
+    long trimMemory(int level) {
+        boolean hidden = level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && !isShown());
+        if (!hidden || screenshotView == null) return 0;
+        
+        long freed = getScreenshotByteCount();
+        Bitmap bitmap = screenshotBitmap;
+        screenshotBitmap = null;
+        removeScreenshotView();
+        if (bitmap != null) bitmap.recycle();
+        
+        TurbolinksLog.d("Trimmed screenshot, freed " + freed + " bytes", TurbolinksView.this.debugCallback);
+        return freed;
+    }
+    
+    /**
+     * @return The number of bytes held by the screenshot currently displayed, or 0.
+     */
+    long getScreenshotByteCount() {
+        Bitmap bitmap = screenshotBitmap;
+        return bitmap != null && !bitmap.isRecycled() ? bitmap.getAllocationByteCount() : 0;
+    }
+    
     /**
      * Gets the current orientation of the device.
      *
@@ -306,21 +638,23 @@ public class TurbolinksView extends FrameLayout  {
     
     /**
      * Determines if the app's memory heap has enough space to create a bitmapped screenshot without
-     * running into an OOM.
+     * running into an OOM. The heap can still grow up to maxMemory(), so only the used part of
+     * totalMemory() counts against it.
      *
-     * @return Whether the heap has over a given % of memory available.
+     * @param bytes The size of the bitmap to create.
+     * @return Whether over 10% of the maximum heap would remain after creating the bitmap.
      */
-    private boolean hasEnoughHeapMemoryForScreenshot() {
+    private boolean hasEnoughHeapMemoryForScreenshot(long bytes) {
         final Runtime runtime = Runtime.getRuntime();
         
-        // Auto casting to floats necessary for division
-        float free = runtime.freeMemory();
-        float total = runtime.totalMemory();
-        float remaining = free / total;
+        long max = runtime.maxMemory();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long remaining = max - used - bytes;
         
-        TurbolinksLog.d("Memory remaining percentage: " + remaining, TurbolinksView.this.debugCallback);
+        TurbolinksLog.d("Heap remaining after screenshot: " + remaining + " of " + max + " bytes",
+                TurbolinksView.this.debugCallback);
         
-        return remaining > .10;
+        return remaining > max / 10;
     }
   
 }
\ No newline at end of file
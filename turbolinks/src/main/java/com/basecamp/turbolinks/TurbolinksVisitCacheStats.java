@@ -0,0 +1,62 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>How the Turbolinks requests of one visit were answered by the {@link TurbolinksResponseCache}.
+ * Read with {@link TurbolinksSession#getVisitCacheStats()}.</p>
+ */
+public class TurbolinksVisitCacheStats {
+    private final String visitIdentifier;
+    private int hitCount;
+    private int revalidateCount;
+    private int missCount;
+
+    TurbolinksVisitCacheStats(String visitIdentifier) {
+        this.visitIdentifier = visitIdentifier;
+    }
+
+    /**
+     * @return The identifier of the visit, or null for requests made outside a visit.
+     */
+    public String getVisitIdentifier() {
+        return visitIdentifier;
+    }
+
+    /**
+     * @return The number of responses served from disk without a network request.
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of responses served from disk after the server answered 304.
+     */
+    public synchronized int getRevalidateCount() {
+        return revalidateCount;
+    }
+
+    /**
+     * @return The number of responses downloaded in full.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "visit " + visitIdentifier + ": hits=" + hitCount + ", revalidated=" + revalidateCount
+                + ", misses=" + missCount;
+    }
+
+    synchronized void recordHit() {
+        hitCount++;
+    }
+
+    synchronized void recordRevalidate() {
+        revalidateCount++;
+    }
+
+    synchronized void recordMiss() {
+        missCount++;
+    }
+}
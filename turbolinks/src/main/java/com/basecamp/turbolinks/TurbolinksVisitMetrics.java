@@ -0,0 +1,223 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Timestamps of one Turbolinks visit, captured as each bridge callback reaches the session.
+ * Native timestamps come from {@code SystemClock.elapsedRealtimeNanos()}; Javascript timestamps
+ * are the page's {@code performance.now()} in milliseconds when the bridge made the call. Both are
+ * monotonic, but neither is comparable to wall clock time or to the other.</p>
+ *
+ * <p>Delivered to a {@link TurbolinksVisitMetricsListener} once the visit has completed and its
+ * response has rendered, or its request has failed. Timestamps of phases that didn't happen are
+ * -1 (native) or NaN (Javascript).</p>
+ */
+public class TurbolinksVisitMetrics {
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final String visitIdentifier;
+    private String location;
+    private String action;
+    private boolean hasCachedSnapshot;
+    private int failedStatusCode;
+    // Set by a render reported after the request completed; the timestamps alone can't tell, as
+    // two callbacks can read the same clock value
+    private boolean renderedAfterRequest;
+
+    private long proposedNanos = -1;
+    private long startedNanos = -1;
+    private long requestCompletedNanos = -1;
+    private long firstRenderedNanos = -1;
+    private long renderedNanos = -1;
+    private long completedNanos = -1;
+    private long failedNanos = -1;
+
+    private double jsStartedMillis = Double.NaN;
+    private double jsRequestCompletedMillis = Double.NaN;
+    private double jsRenderedMillis = Double.NaN;
+    private double jsCompletedMillis = Double.NaN;
+
+    TurbolinksVisitMetrics(String visitIdentifier) {
+        this.visitIdentifier = visitIdentifier;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    public String getVisitIdentifier() {
+        return visitIdentifier;
+    }
+
+    /**
+     * @return The proposed location, or null if the visit was started without a proposal.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The proposed action, or null if the visit was started without a proposal.
+     */
+    public String getAction() {
+        return action;
+    }
+
+    public boolean hasCachedSnapshot() {
+        return hasCachedSnapshot;
+    }
+
+    public boolean isFailed() {
+        return failedNanos >= 0;
+    }
+
+    /**
+     * @return The HTTP status code the request failed with, or 0 if it didn't fail.
+     */
+    public int getFailedStatusCode() {
+        return failedStatusCode;
+    }
+
+    public long getProposedNanos() {
+        return proposedNanos;
+    }
+
+    public long getStartedNanos() {
+        return startedNanos;
+    }
+
+    public long getRequestCompletedNanos() {
+        return requestCompletedNanos;
+    }
+
+    /**
+     * @return When the first render of the visit was reported, which is the cached snapshot if
+     * the visit had one.
+     */
+    public long getFirstRenderedNanos() {
+        return firstRenderedNanos;
+    }
+
+    /**
+     * @return When the last render of the visit was reported, normally the response.
+     */
+    public long getRenderedNanos() {
+        return renderedNanos;
+    }
+
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    public long getFailedNanos() {
+        return failedNanos;
+    }
+
+    public double getJsStartedMillis() {
+        return jsStartedMillis;
+    }
+
+    public double getJsRequestCompletedMillis() {
+        return jsRequestCompletedMillis;
+    }
+
+    public double getJsRenderedMillis() {
+        return jsRenderedMillis;
+    }
+
+    public double getJsCompletedMillis() {
+        return jsCompletedMillis;
+    }
+
+    /**
+     * @return Milliseconds from the proposal (or start) of the visit to its response being
+     * rendered, or -1 if either is missing.
+     */
+    public double getProposeToRenderMillis() {
+        return millisBetween(proposedNanos >= 0 ? proposedNanos : startedNanos, renderedNanos);
+    }
+
+    /**
+     * @return Milliseconds from the proposal (or start) of the visit to its first render, or -1
+     * if either is missing.
+     */
+    public double getProposeToFirstRenderMillis() {
+        return millisBetween(proposedNanos >= 0 ? proposedNanos : startedNanos, firstRenderedNanos);
+    }
+
+    /**
+     * @return Milliseconds from the start of the visit to its request completing, or -1 if
+     * either is missing.
+     */
+    public double getRequestMillis() {
+        return millisBetween(startedNanos, requestCompletedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "TurbolinksVisitMetrics{" + visitIdentifier
+                + ", location=" + location
+                + ", cachedSnapshot=" + hasCachedSnapshot
+                + ", proposeToFirstRender=" + getProposeToFirstRenderMillis()
+                + " ms, proposeToRender=" + getProposeToRenderMillis()
+                + " ms, request=" + getRequestMillis()
+                + " ms" + (isFailed() ? ", failed=" + failedStatusCode : "") + "}";
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    void proposed(String location, String action, long nanos) {
+        this.location = location;
+        this.action = action;
+        this.proposedNanos = nanos;
+    }
+
+    void started(boolean hasCachedSnapshot, long nanos, double jsMillis) {
+        this.hasCachedSnapshot = hasCachedSnapshot;
+        this.startedNanos = nanos;
+        this.jsStartedMillis = jsMillis;
+    }
+
+    void requestCompleted(long nanos, double jsMillis) {
+        this.requestCompletedNanos = nanos;
+        this.jsRequestCompletedMillis = jsMillis;
+    }
+
+    void rendered(long nanos, double jsMillis) {
+        if (firstRenderedNanos < 0) {
+            this.firstRenderedNanos = nanos;
+        }
+        this.renderedNanos = nanos;
+        this.jsRenderedMillis = jsMillis;
+        if (requestCompletedNanos >= 0) {
+            this.renderedAfterRequest = true;
+        }
+    }
+
+    void completed(long nanos, double jsMillis) {
+        this.completedNanos = nanos;
+        this.jsCompletedMillis = jsMillis;
+    }
+
+    void failed(int statusCode, long nanos) {
+        this.failedStatusCode = statusCode;
+        this.failedNanos = nanos;
+    }
+
+    /**
+     * <p>A visit is finished once it failed, or once it completed and a render was reported
+     * after its request completed. Turbolinks reports completion before the bridge reports the
+     * render, and a cached snapshot renders before the request completes.</p>
+     *
+     * @return True if the record can be delivered.
+     */
+    boolean isFinished() {
+        return failedNanos >= 0
+                || (completedNanos >= 0 && renderedNanos >= 0 && (renderedAfterRequest || requestCompletedNanos < 0));
+    }
+
+    private static double millisBetween(long fromNanos, long toNanos) {
+        if (fromNanos < 0 || toNanos < 0) return -1;
+        return (toNanos - fromNanos) / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,15 @@
+package com.basecamp.turbolinks;
+
+/**
+ * <p>Receives the {@link TurbolinksVisitMetrics} of each finished visit. Set with
+ * {@link TurbolinksSession#setVisitMetricsListener(TurbolinksVisitMetricsListener)}.</p>
+ */
+public interface TurbolinksVisitMetricsListener {
+    /**
+     * <p>Called on the main thread once a visit has rendered its response and completed, or its
+     * request has failed.</p>
+     *
+     * @param metrics The timestamps of the visit.
+     */
+    void onVisitFinished(TurbolinksVisitMetrics metrics);
+}
@@ -0,0 +1,159 @@
+package com.basecamp.turbolinks;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * <p>Decides which proposed visits go ahead, so rapid taps produce one visit per final
+ * destination. A session has one scheduler; see {@link TurbolinksSession#getVisitScheduler()}.</p>
+ *
+ * <ul>
+ *     <li>A proposal for the same location as the previous one, within
+ *     {@link #DUPLICATE_WINDOW_MILLIS}, is coalesced into it.</li>
+ *     <li>A proposal for the location of the visit in flight is dropped.</li>
+ *     <li>When a newer visit starts while another is still in flight, the older one is
+ *     cancelled.</li>
+ * </ul>
+ *
+ * <p>Locations are compared without their fragment, and with scheme, host and default port
+ * normalized. Times come from a monotonic clock.</p>
+ */
+public final class TurbolinksVisitScheduler {
+    static final long DUPLICATE_WINDOW_MILLIS = 500;
+
+    private String lastProposedLocation;
+    private long lastProposedMillis;
+    private String committedLocation;
+    private String inFlightIdentifier;
+    private String inFlightLocation;
+    private long droppedCount;
+    private long coalescedCount;
+    private long cancelledCount;
+
+    TurbolinksVisitScheduler() {}
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * @return The number of proposals dropped because their location was already being visited.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return The number of duplicate proposals collapsed into the one before them.
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * @return The number of in-flight visits cancelled because a newer visit started.
+     */
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * @param location  The proposed location.
+     * @param nowMillis The current time of a monotonic clock.
+     * @return True if the proposal should go ahead.
+     */
+    synchronized boolean propose(String location, long nowMillis) {
+        String canonical = canonicalize(location);
+
+        if (canonical != null && canonical.equals(lastProposedLocation)
+                && nowMillis - lastProposedMillis < DUPLICATE_WINDOW_MILLIS) {
+            coalescedCount++;
+            return false;
+        }
+        lastProposedLocation = canonical;
+        lastProposedMillis = nowMillis;
+
+        if (canonical != null && inFlightIdentifier != null && canonical.equals(inFlightLocation)) {
+            droppedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Records that a visit to the location was handed to Turbolinks.</p>
+     */
+    synchronized void commit(String location) {
+        committedLocation = canonicalize(location);
+    }
+
+    /**
+     * <p>Records that Turbolinks started a visit.</p>
+     *
+     * @param visitIdentifier The identifier of the started visit.
+     * @param location        The location of the visit, as reported by the bridge. If null, the
+     *                        last committed location is assumed.
+     * @return The identifier of the visit it supersedes, which should be cancelled, or null.
+     */
+    synchronized String started(String visitIdentifier, String location) {
+        String superseded = inFlightIdentifier;
+        inFlightIdentifier = visitIdentifier;
+        inFlightLocation = location != null ? canonicalize(location) : committedLocation;
+
+        if (superseded == null || superseded.equals(visitIdentifier)) return null;
+        cancelledCount++;
+        return superseded;
+    }
+
+    /**
+     * <p>Records that a visit completed or failed.</p>
+     */
+    synchronized void finished(String visitIdentifier) {
+        if (visitIdentifier != null && visitIdentifier.equals(inFlightIdentifier)) {
+            inFlightIdentifier = null;
+            inFlightLocation = null;
+        }
+    }
+
+    /**
+     * <p>Forgets every visit, keeping the counts. Used when the page is reloaded.</p>
+     */
+    synchronized void reset() {
+        lastProposedLocation = null;
+        committedLocation = null;
+        inFlightIdentifier = null;
+        inFlightLocation = null;
+    }
+
+    /**
+     * @return The location without its fragment, with lower case scheme and host, no default port
+     * and a path of at least "/". Null for null, and the location itself if it can't be parsed.
+     */
+    static String canonicalize(String location) {
+        if (location == null) return null;
+
+        try {
+            URI uri = new URI(location);
+            String scheme = uri.getScheme();
+            String host = uri.getHost();
+            if (scheme == null || host == null) return location;
+
+            scheme = scheme.toLowerCase(Locale.US);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            String query = uri.getRawQuery();
+
+            return scheme + "://" + host.toLowerCase(Locale.US) + (port != -1 ? ":" + port : "")
+                    + path + (query != null ? "?" + query : "");
+        } catch (Exception e) {
+            return location;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.basecamp.turbolinks;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.webkit.WebChromeClient;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A process-wide pool of WebViews that have already been configured for Turbolinks. WebViews are
+ * created one at a time while the main thread is idle, so that creating a new
+ * {@link TurbolinksSession} does not pay for building a WebView on the caller's thread.</p>
+ *
+ * <p>Sessions take a WebView from the pool when they are created and hand it back from
+ * {@link TurbolinksSession#clearInstance()}. By default the pool is empty and every session
+ * creates its own WebView; call {@link #prewarm(int)} early (for example in
+ * {@code Application.onCreate()}) to keep a number of WebViews ready.</p>
+ */
+public class TurbolinksWebViewPool {
+    private static final String BLANK_PAGE = "about:blank";
+
+    private static volatile TurbolinksWebViewPool instance;
+
+    private final Context applicationContext;
+    private final ArrayDeque<WebView> availableWebViews = new ArrayDeque<>();
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicInteger missCount = new AtomicInteger();
+    private int targetSize;
+    // Released WebViews still loading the blank page, not yet offered to sessions
+    private int resettingCount;
+    private boolean warmupScheduled;
+
+    // ---------------------------------------------------
+    // Constructor
+    // ---------------------------------------------------
+
+    /**
+     * Private constructor, use {@link #getInstance(Context)}.
+     *
+     * @param context Any Android context.
+     */
+    private TurbolinksWebViewPool(Context context) {
+        this.applicationContext = context.getApplicationContext();
+    }
+
+    /**
+     * <p>Returns the process-wide pool.</p>
+     *
+     * @param context Any Android context.
+     * @return The shared pool, guaranteed to not be null.
+     */
+    public static TurbolinksWebViewPool getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TurbolinksWebViewPool.class) {
+                if (instance == null) {
+                    instance = new TurbolinksWebViewPool(context);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    // ---------------------------------------------------
+    // Public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Sets the number of WebViews the pool keeps ready and schedules any missing ones to be
+     * built during main thread idle time. Passing 0 disables pre-warming; WebViews already
+     * in the pool are kept until they are taken.</p>
+     *
+     * @param size The number of WebViews to keep ready.
+     */
+    public void prewarm(int size) {
+        synchronized (this) {
+            this.targetSize = Math.max(0, size);
+        }
+        TurbolinksHelper.runOnMainThread(applicationContext, "prewarm", new Runnable() {
+            @Override
+            public void run() {
+                scheduleWarmup();
+            }
+        });
+    }
+
+    /**
+     * @return The number of WebViews that were taken ready-made from the pool.
+     */
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of WebViews that had to be created because the pool was empty.
+     */
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The number of WebViews currently waiting in the pool.
+     */
+    public synchronized int getAvailableCount() {
+        return availableWebViews.size();
+    }
+
+    /**
+     * @return The number of WebViews the pool tries to keep ready.
+     */
+    public synchronized int getTargetSize() {
+        return targetSize;
+    }
+
+    // ---------------------------------------------------
+    // Package public
+    // ---------------------------------------------------
+
+    /**
+     * <p>Takes a configured WebView from the pool, or creates one if the pool is empty. Must be
+     * called on the main thread.</p>
+     *
+     * @return A configured WebView with no parent.
+     */
+    WebView acquire() {
+        WebView webView;
+        synchronized (this) {
+            webView = availableWebViews.poll();
+        }
+
+        if (webView != null) {
+            hitCount.incrementAndGet();
+            // Already cleared once the blank page loaded, cleared again so no earlier session's
+            // page can ever be reached with goBack()
+            webView.clearHistory();
+        } else {
+            missCount.incrementAndGet();
+            webView = TurbolinksHelper.createWebView(applicationContext);
+        }
+
+        scheduleWarmup();
+        return webView;
+    }
+
+    /**
+     * <p>Clears a WebView that is no longer used by a session and keeps it for reuse if the pool
+     * is below its target size. Otherwise the WebView is destroyed. The WebView is only offered
+     * to sessions once the blank page has loaded and its history has been cleared. Must be
+     * called on the main thread, after any custom Javascript interfaces have been removed.</p>
+     *
+     * @param webView The WebView to recycle.
+     */
+    void release(WebView webView) {
+        if (webView == null) return;
+
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+
+        boolean keep;
+        synchronized (this) {
+            keep = availableWebViews.size() + resettingCount < targetSize;
+            if (keep) {
+                resettingCount++;
+            }
+        }
+
+        if (!keep) {
+            webView.destroy();
+            return;
+        }
+
+        resetWebView(webView);
+    }
+
+    /**
+     * <p>Destroys every idle WebView in the pool, to free memory. The pool refills on the next
+     * {@link #acquire()} while its target size is above 0. Must be called on the main thread.</p>
+     *
+     * @return The number of WebViews destroyed.
+     */
+    int trim() {
+        WebView[] idle;
+        synchronized (this) {
+            idle = availableWebViews.toArray(new WebView[availableWebViews.size()]);
+            availableWebViews.clear();
+        }
+
+        for (WebView webView : idle) {
+            webView.destroy();
+        }
+        return idle.length;
+    }
+
+    /**
+     * <p>Offers a released WebView to sessions once its blank page has loaded and its history has
+     * been cleared, unless the pool was trimmed or shrunk in the meantime. Must be called on the
+     * main thread.</p>
+     *
+     * @param webView The WebView that finished resetting.
+     */
+    void onResetFinished(WebView webView) {
+        webView.clearHistory();
+        webView.setWebViewClient(new WebViewClient());
+
+        boolean keep;
+        synchronized (this) {
+            resettingCount--;
+            keep = availableWebViews.size() < targetSize;
+            if (keep) {
+                availableWebViews.offer(webView);
+            }
+        }
+
+        if (!keep) {
+            webView.destroy();
+        }
+    }
+
+    // ---------------------------------------------------
+    // Private
+    // ---------------------------------------------------
+
+    /**
+     * <p>Registers an idle handler on the main looper that builds one WebView per idle pass until
+     * the pool reaches its target size. Must be called on the main thread.</p>
+     */
+    private void scheduleWarmup() {
+        synchronized (this) {
+            if (warmupScheduled || availableWebViews.size() >= targetSize) return;
+            warmupScheduled = true;
+        }
+
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                synchronized (TurbolinksWebViewPool.this) {
+                    if (availableWebViews.size() >= targetSize) {
+                        warmupScheduled = false;
+                        return false;
+                    }
+                }
+
+                WebView webView = TurbolinksHelper.createWebView(applicationContext);
+
+                synchronized (TurbolinksWebViewPool.this) {
+                    availableWebViews.offer(webView);
+                    warmupScheduled = availableWebViews.size() < targetSize;
+                    return warmupScheduled;
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Returns a used WebView to the state {@link TurbolinksHelper#createWebView(Context)} leaves
+     * it in: blank page, no history, default clients and settings, and no reference to an
+     * activity.</p>
+     *
+     * @param webView The WebView to reset.
+     */
+    private void resetWebView(WebView webView) {
+        webView.stopLoading();
+        webView.setWebViewClient(new WebViewClient() {
+            private boolean finished;
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                // The blank page loads asynchronously, clearing before it has committed would keep
+                // the previous session's pages in the history
+                if (finished || !BLANK_PAGE.equals(url)) return;
+                finished = true;
+                onResetFinished(view);
+            }
+        });
+        webView.setWebChromeClient(new WebChromeClient());
+        webView.getSettings().setUserAgentString(null);
+        webView.clearFormData();
+        webView.loadUrl(BLANK_PAGE);
+
+        if (webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(applicationContext);
+        }
+    }
+}
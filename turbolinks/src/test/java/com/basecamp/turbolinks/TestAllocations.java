@@ -0,0 +1,41 @@
+package com.basecamp.turbolinks;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures heap allocation of the current thread through the HotSpot ThreadMXBean, standing in for
+ * JMH, which doesn't run against the Android classpath. Tests using it are skipped on JVMs that
+ * can't track allocations.
+ */
+final class TestAllocations {
+    private TestAllocations() {
+    }
+
+    /**
+     * Runs the call the given number of times, after as many warm-up runs so class loading and
+     * lazy initialization aren't measured.
+     *
+     * @return The average bytes allocated per call.
+     */
+    static long bytesPerCall(int iterations, Runnable call) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean hotspotBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(hotspotBean.isThreadAllocatedMemorySupported() && hotspotBean.isThreadAllocatedMemoryEnabled());
+
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = hotspotBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        long after = hotspotBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / iterations;
+    }
+}
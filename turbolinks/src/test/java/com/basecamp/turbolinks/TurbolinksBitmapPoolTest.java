@@ -0,0 +1,68 @@
+package com.basecamp.turbolinks;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksBitmapPoolTest extends BaseTest {
+    private TurbolinksBitmapPool pool;
+
+    @Before
+    public void setup() {
+        super.setup();
+        pool = TurbolinksBitmapPool.getInstance();
+        pool.clear();
+        pool.setMaxSizeBytes(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void getFromEmptyPoolIsMiss() {
+        int misses = pool.getMissCount();
+
+        assertThat(pool.get(100, 200, Bitmap.Config.ARGB_8888)).isNull();
+        assertThat(pool.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void releasedBitmapIsReusedForSameSize() {
+        Bitmap bitmap = Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888);
+        int hits = pool.getHitCount();
+
+        pool.put(bitmap);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(bitmap.getByteCount());
+        assertThat(pool.get(100, 200, Bitmap.Config.ARGB_8888)).isSameAs(bitmap);
+        assertThat(pool.getHitCount()).isEqualTo(hits + 1);
+        assertThat(pool.getSizeBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void releasedBitmapIsNotReusedForOtherSize() {
+        pool.put(Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888));
+
+        assertThat(pool.get(200, 100, Bitmap.Config.ARGB_8888)).isNull();
+        assertThat(pool.get(100, 200, Bitmap.Config.RGB_565)).isNull();
+    }
+
+    @Test
+    public void maxSizeDropsOldestBitmaps() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 20, Bitmap.Config.ARGB_8888);
+        pool.setMaxSizeBytes(second.getByteCount());
+
+        pool.put(first);
+        pool.put(second);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(second.getByteCount());
+        assertThat(pool.get(10, 10, Bitmap.Config.ARGB_8888)).isNull();
+        assertThat(pool.get(10, 20, Bitmap.Config.ARGB_8888)).isSameAs(second);
+    }
+}
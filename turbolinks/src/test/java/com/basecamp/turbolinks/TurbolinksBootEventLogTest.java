@@ -0,0 +1,63 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksBootEventLogTest extends BaseTest {
+    private TurbolinksBootEventLog log;
+
+    @Before
+    public void setup() {
+        super.setup();
+        log = new TurbolinksBootEventLog();
+    }
+
+    @Test
+    public void drainReturnsEventsInOrderOnce() {
+        log.record(1, TurbolinksBootEvent.Code.WEBVIEW_ACQUIRED, 42);
+        log.record(1, TurbolinksBootEvent.Code.LAYER_TYPE_HARDWARE);
+
+        List<TurbolinksBootEvent> events = log.drain();
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).getCode()).isEqualTo(TurbolinksBootEvent.Code.WEBVIEW_ACQUIRED);
+        assertThat(events.get(0).getDurationNanos()).isEqualTo(42);
+        assertThat(events.get(1).getDurationNanos()).isEqualTo(-1);
+        assertThat(log.drain()).isEmpty();
+    }
+
+    @Test
+    public void fullLogOverwritesOldestEvents() {
+        int recorded = TurbolinksBootEventLog.CAPACITY + 10;
+        for (int i = 0; i < recorded; i++) {
+            log.record(i, TurbolinksBootEvent.Code.SESSION_REQUESTED);
+        }
+
+        List<TurbolinksBootEvent> events = log.drain();
+
+        assertThat(events).hasSize(TurbolinksBootEventLog.CAPACITY);
+        assertThat(events.get(0).getSessionId()).isEqualTo(10);
+        assertThat(log.getDroppedCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void newSessionRecordsBootEvents() {
+        TurbolinksBootEventLog.getInstance().drain();
+
+        TurbolinksSession session = TurbolinksSession.getNew(context);
+        List<TurbolinksBootEvent> events = TurbolinksBootEventLog.getInstance().drain();
+
+        assertThat(events).isNotEmpty();
+        assertThat(events.get(events.size() - 1).getCode()).isEqualTo(TurbolinksBootEvent.Code.SESSION_CONSTRUCTED);
+        assertThat(events.get(events.size() - 1).getSessionId()).isEqualTo(session.sessionId);
+    }
+}
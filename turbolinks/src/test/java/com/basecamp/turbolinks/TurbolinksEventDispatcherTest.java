@@ -0,0 +1,112 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksEventDispatcherTest extends BaseTest {
+    private TurbolinksEventDispatcher dispatcher;
+    private List<String> delivered;
+
+    @Before
+    public void setup() {
+        super.setup();
+        dispatcher = new TurbolinksEventDispatcher(context);
+        delivered = new ArrayList<>();
+    }
+
+    @Test
+    public void eventsAreDeliveredInOrderOnFrame() {
+        dispatcher.dispatch(record("rendered"));
+        dispatcher.dispatch(record("completed"));
+
+        assertThat(dispatcher.pendingCount()).isEqualTo(2);
+
+        dispatcher.doFrame(0);
+
+        assertThat(delivered).containsExactly("rendered", "completed");
+        assertThat(dispatcher.pendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void repeatedOperationRunsOnceWithinFrame() {
+        Runnable stopRefreshing = record("stopRefreshing");
+
+        dispatcher.dispatchOnce(stopRefreshing);
+        dispatcher.dispatch(record("completed"));
+        dispatcher.dispatchOnce(stopRefreshing);
+        dispatcher.flush();
+
+        assertThat(delivered).containsExactly("completed", "stopRefreshing");
+        assertThat(dispatcher.getDroppedCount()).isEqualTo(1);
+
+        dispatcher.dispatchOnce(stopRefreshing);
+        dispatcher.flush();
+
+        assertThat(delivered).containsExactly("completed", "stopRefreshing", "stopRefreshing");
+    }
+
+    @Test
+    public void latestOperationWinsWithinFrame() {
+        Runnable show = record("show");
+        Runnable hide = record("hide");
+
+        dispatcher.dispatchOnce(show);
+        dispatcher.dispatchOnce(hide);
+        dispatcher.dispatchOnce(show);
+        dispatcher.flush();
+
+        assertThat(delivered).containsExactly("hide", "show");
+    }
+
+    @Test
+    public void eventQueuedDuringBatchWaitsForNextFrame() {
+        dispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                delivered.add("first");
+                dispatcher.dispatch(record("second"));
+            }
+        });
+        dispatcher.flush();
+
+        assertThat(delivered).containsExactly("first");
+        assertThat(dispatcher.pendingCount()).isEqualTo(1);
+
+        dispatcher.flush();
+
+        assertThat(delivered).containsExactly("first", "second");
+    }
+
+    @Test
+    public void releaseDropsPendingEvents() {
+        dispatcher.dispatch(record("completed"));
+        dispatcher.release();
+        dispatcher.dispatch(record("failed"));
+        dispatcher.flush();
+
+        assertThat(delivered).isEmpty();
+    }
+
+    // ---------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                delivered.add(name);
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package com.basecamp.turbolinks;
 
 import android.webkit.WebSettings;
+import android.webkit.WebView;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -41,6 +42,45 @@ public class TurbolinksHelperTest extends BaseTest {
         assertThat(TurbolinksHelper.encodeUrl(url)).doesNotContain(" ");
     }
 
+    @Test
+    public void documentStartBridgeFallsBackWithoutWebViewSupport() {
+        WebView webView = TurbolinksHelper.createWebView(context);
+
+        assertThat(TurbolinksHelper.addDocumentStartBridge(context, webView, null)).isNull();
+    }
+
+    @Test
+    public void getOriginKeepsSchemeHostAndPort() {
+        assertThat(TurbolinksHelper.getOrigin("https://basecamp.com/projects/1?a=b")).isEqualTo("https://basecamp.com/");
+        assertThat(TurbolinksHelper.getOrigin("http://localhost:9292/demo")).isEqualTo("http://localhost:9292/");
+        assertThat(TurbolinksHelper.getOrigin("file:///android_asset/index.html")).isNull();
+    }
+
+    @Test
+    public void insertBridgeGoesBeforeBodyEnd() {
+        String html = TurbolinksHelper.insertBridge("<html><body><p>shell</p></BODY></html>", "bridge()");
+
+        assertThat(html).isEqualTo("<html><body><p>shell</p><script>bridge()</script></BODY></html>");
+    }
+
+    @Test
+    public void insertBridgeAppendsWithoutBodyEnd() {
+        assertThat(TurbolinksHelper.insertBridge("<p>shell</p>", "bridge()")).isEqualTo("<p>shell</p><script>bridge()</script>");
+    }
+
+    @Test
+    public void runOnMainThreadRunsInlineOnMainThread() {
+        final boolean[] ran = {false};
+        TurbolinksHelper.runOnMainThread(context, "test", new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+
+        assertThat(ran[0]).isTrue();
+    }
+
 //    TODO: Robolectric having trouble with local resources directory
 //    @Test
 //    public void getContentFromAssetFile() {
@@ -0,0 +1,155 @@
+package com.basecamp.turbolinks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TurbolinksJavascriptEncoderTest {
+    private static final String FUNCTION_NAME = "webView.visitLocationWithActionAndRestorationIdentifier";
+    private static final String VISIT_IDENTIFIER = "2d5a8ba1-7a3b-4d4c-9fe4-0f8c1c2b7d11";
+    private static final int ITERATIONS = 10000;
+
+    // -----------------------------------------------------------------------
+    // Encoding
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void encodesPrimitivesLikeGson() {
+        Object[] values = {null, "", "plain", true, false, 0, -42, Long.MAX_VALUE, (short) 7,
+            (byte) 3, 1.5d, 0.1f, 'c'};
+
+        for (Object value : values) {
+            assertThat(encode(value)).isEqualTo(legacyEncode(value));
+        }
+    }
+
+    @Test
+    public void escapesStringsLikeGson() {
+        String[] values = {"quote \" here", "back\\slash", "line\nbreak\r\ttab", "\b\f",
+            "\u0001\u001f", "separators \u2028 \u2029", "<script>&'</script>",
+            "https://basecamp.com/search?q=test%20test&x=1#frag", "\u00e9\u4e2d\ud83d\ude00"};
+
+        for (String value : values) {
+            assertThat(encode(value)).isEqualTo(legacyEncode(value));
+        }
+    }
+
+    @Test
+    public void fallsBackToGsonForComplexObjects() {
+        Object value = Collections.singletonMap("key", "value");
+
+        assertThat(encode(value)).isEqualTo(legacyEncode(value));
+    }
+
+    @Test
+    public void encodesNonFiniteNumbersAsNull() {
+        assertThat(encode(Double.NaN)).isEqualTo("null");
+        assertThat(encode(Float.POSITIVE_INFINITY)).isEqualTo("null");
+    }
+
+    @Test
+    public void encodeCallMatchesLegacyFormat() {
+        Object[] params = {"https://basecamp.com", TurbolinksSession.ACTION_ADVANCE, null};
+        String expected = String.format("%s(%s);", FUNCTION_NAME, StringUtils.join(legacyParams(params), ","));
+
+        assertThat(TurbolinksJavascriptEncoder.encodeCall(FUNCTION_NAME, params)).isEqualTo(expected);
+    }
+
+    @Test
+    public void encodeCallWithoutParams() {
+        assertThat(TurbolinksJavascriptEncoder.encodeCall("webView.fn")).isEqualTo("webView.fn();");
+        assertThat(TurbolinksJavascriptEncoder.encodeCall("webView.fn", (Object[]) null)).isEqualTo("webView.fn();");
+    }
+
+    @Test
+    public void encodeCallLeavesParamsUntouched() {
+        Object[] params = {"visitIdentifier", 1};
+        TurbolinksJavascriptEncoder.encodeCall(FUNCTION_NAME, params);
+
+        assertThat(params[0]).isEqualTo("visitIdentifier");
+        assertThat(params[1]).isEqualTo(1);
+    }
+
+    @Test
+    public void batchAppendsCallsInOrder() {
+        TurbolinksJavascriptBatch batch = new TurbolinksJavascriptBatch()
+            .add("webView.changeHistoryForVisitWithIdentifier", "id")
+            .add("webView.loadCachedSnapshotForVisitWithIdentifier", "id");
+        StringBuilder buffer = TurbolinksJavascriptEncoder.obtainBuffer();
+        batch.appendTo(buffer);
+
+        assertThat(batch.size()).isEqualTo(2);
+        assertThat(buffer.toString()).isEqualTo("try{webView.changeHistoryForVisitWithIdentifier(\"id\");}catch(e){console.error(e)}"
+            + "try{webView.loadCachedSnapshotForVisitWithIdentifier(\"id\");}catch(e){console.error(e)}");
+    }
+
+    // -----------------------------------------------------------------------
+    // Allocation
+    // -----------------------------------------------------------------------
+
+    @Test
+    public void allocatesLessPerCallThanGson() {
+        long legacyBytes = TestAllocations.bytesPerCall(ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                legacyCall();
+            }
+        });
+        long encoderBytes = TestAllocations.bytesPerCall(ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                encoderCall();
+            }
+        });
+
+        // The encoder only allocates the params array and the resulting string
+        assertThat(encoderBytes).isLessThan(512);
+        assertThat(encoderBytes).isLessThan(legacyBytes / 2);
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private static String encode(Object value) {
+        StringBuilder buffer = TurbolinksJavascriptEncoder.obtainBuffer();
+        TurbolinksJavascriptEncoder.appendValue(buffer, value);
+        return buffer.toString();
+    }
+
+    private static String legacyEncode(Object value) {
+        return new GsonBuilder().disableHtmlEscaping().create().toJson(value);
+    }
+
+    private static Object[] legacyParams(Object[] params) {
+        Object[] copy = params.clone();
+        Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = gson.toJson(copy[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * The encoding previously done by TurbolinksHelper.runJavascript for a visitStarted call.
+     */
+    private static String legacyCall() {
+        Object[] params = legacyParams(new Object[]{VISIT_IDENTIFIER});
+        return String.format("javascript: %s(%s);", "webView.issueRequestForVisitWithIdentifier",
+            StringUtils.join(params, ","));
+    }
+
+    private static String encoderCall() {
+        StringBuilder buffer = TurbolinksJavascriptEncoder.obtainBuffer();
+        buffer.append("javascript: ");
+        TurbolinksJavascriptEncoder.appendCall(buffer, "webView.issueRequestForVisitWithIdentifier",
+            new Object[]{VISIT_IDENTIFIER});
+        return buffer.toString();
+    }
+}
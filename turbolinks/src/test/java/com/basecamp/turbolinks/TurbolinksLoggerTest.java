@@ -0,0 +1,127 @@
+package com.basecamp.turbolinks;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksLoggerTest extends BaseTest {
+    private static final String VISIT_IDENTIFIER = "visitIdentifierValue";
+    private static final int ITERATIONS = 100000;
+
+    private TurbolinksLogger logger;
+    private boolean debugLoggingEnabled;
+
+    @Before
+    public void setup() {
+        super.setup();
+        logger = new TurbolinksLogger();
+        debugLoggingEnabled = TurbolinksLog.getDebugLoggingEnabled();
+        TurbolinksLog.setDebugLoggingEnabled(false);
+    }
+
+    @After
+    public void teardown() {
+        TurbolinksLog.setDebugLoggingEnabled(debugLoggingEnabled);
+    }
+
+    @Test
+    public void formatFillsPlaceholdersInOrder() {
+        assertThat(TurbolinksLogEvent.VISIT_STARTED.format(VISIT_IDENTIFIER, true))
+            .isEqualTo("visitStarted: visitIdentifierValue, cached snapshot: true");
+        assertThat(TurbolinksLogEvent.PAGE_INVALIDATED.format(null, null)).isEqualTo("pageInvalidated");
+    }
+
+    @Test
+    public void disabledLoggingDoesNotFormatArguments() {
+        CountingArgument argument = new CountingArgument();
+
+        logger.d(TurbolinksLogEvent.VISIT_STARTED, argument, true);
+
+        assertThat(argument.toStringCount).isEqualTo(0);
+    }
+
+    @Test
+    public void minLevelFiltersCallback() {
+        RecordingCallback callback = new RecordingCallback();
+        logger.setCallback(callback);
+        logger.setMinLevel(Log.ERROR);
+
+        logger.d(TurbolinksLogEvent.VISIT_RENDERED, VISIT_IDENTIFIER);
+        TurbolinksLog.d("unstructured", logger);
+        logger.e(TurbolinksLogEvent.VISIT_RENDERED, VISIT_IDENTIFIER);
+
+        assertThat(callback.messages).containsExactly("visitRendered: visitIdentifierValue");
+    }
+
+    @Test
+    public void eventCallbackReceivesTypedEvent() {
+        RecordingCallback callback = new RecordingCallback();
+        logger.setCallback(callback);
+
+        logger.d(TurbolinksLogEvent.VISIT_REQUEST_FAILED, VISIT_IDENTIFIER, 500);
+
+        assertThat(callback.events).containsExactly(TurbolinksLogEvent.VISIT_REQUEST_FAILED);
+        assertThat(callback.messages).containsExactly("visitRequestFailedWithStatusCode: visitIdentifierValue, status code: 500");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minLevelMustBeLogLevel() {
+        logger.setMinLevel(0);
+    }
+
+    @Test
+    public void disabledLoggingDoesNotAllocate() {
+        final String identifier = new String(VISIT_IDENTIFIER);
+        final int statusCode = 503;
+
+        long bytes = TestAllocations.bytesPerCall(ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                logger.d(TurbolinksLogEvent.VISIT_REQUEST_FAILED, identifier, statusCode);
+            }
+        });
+
+        assertThat(bytes).isEqualTo(0);
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private static class CountingArgument {
+        int toStringCount;
+
+        @Override
+        public String toString() {
+            toStringCount++;
+            return "counted";
+        }
+    }
+
+    private static class RecordingCallback implements TurbolinksLogEventCallback {
+        final List<String> messages = new ArrayList<>();
+        final List<TurbolinksLogEvent> events = new ArrayList<>();
+
+        @Override
+        public void logEvent(int logLevel, String tag, String msg) {
+            messages.add(msg);
+        }
+
+        @Override
+        public void onLogEvent(int logLevel, TurbolinksLogEvent event, String msg) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.basecamp.turbolinks;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksMemoryTrimmerTest extends BaseTest {
+    private TurbolinksSession session;
+    private TurbolinksBitmapPool pool;
+
+    @Before
+    public void setup() {
+        super.setup();
+        session = TurbolinksSession.getNew(context);
+        pool = TurbolinksBitmapPool.getInstance();
+        pool.clear();
+    }
+
+    @After
+    public void teardown() {
+        pool.clear();
+    }
+
+    @Test
+    public void runningLowHalvesBitmapPool() {
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        long before = pool.getSizeBytes();
+
+        session.memoryTrimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(before / 2);
+    }
+
+    @Test
+    public void runningCriticalEmptiesBitmapPool() {
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        session.memoryTrimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(0);
+        assertThat(session.memoryTrimmer.isWebViewPaused()).isFalse();
+    }
+
+    @Test
+    public void hiddenUiPausesWebViewUntilShownAgain() {
+        session.memoryTrimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(session.memoryTrimmer.isWebViewPaused()).isTrue();
+
+        session.view(new TurbolinksView(context));
+
+        assertThat(session.memoryTrimmer.isWebViewPaused()).isFalse();
+    }
+
+    @Test
+    public void backgroundDropsBitmapPoolAndPausesWebView() {
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        session.memoryTrimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(0);
+        assertThat(session.memoryTrimmer.isWebViewPaused()).isTrue();
+    }
+
+    @Test
+    public void uiHiddenKeepsBitmapPool() {
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        long before = pool.getSizeBytes();
+
+        session.memoryTrimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(pool.getSizeBytes()).isEqualTo(before);
+    }
+
+    @Test
+    public void registeredOnlyWhileSessionHasView() {
+        assertThat(session.memoryTrimmer.isRegistered()).isFalse();
+
+        session.view(new TurbolinksView(context));
+
+        assertThat(session.memoryTrimmer.isRegistered()).isTrue();
+
+        session.clearInstance();
+
+        assertThat(session.memoryTrimmer.isRegistered()).isFalse();
+    }
+
+    @Test
+    public void resetDefaultUnregistersOldSession() {
+        TurbolinksSession defaultSession = TurbolinksSession.getDefault(context);
+        defaultSession.view(new TurbolinksView(context));
+
+        TurbolinksSession.resetDefault();
+
+        assertThat(defaultSession.memoryTrimmer.isRegistered()).isFalse();
+    }
+
+    @Test
+    public void visibleViewKeepsScreenshotWhileRunning() {
+        TurbolinksView view = new TurbolinksView(context);
+
+        assertThat(view.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.basecamp.turbolinks;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksPlaceholderStoreTest extends BaseTest {
+    private static final long NOW = System.currentTimeMillis();
+
+    private File directory;
+    private TurbolinksPlaceholderStore store;
+
+    @Before
+    public void setup() {
+        super.setup();
+        directory = new File(context.getCacheDir(), "turbolinks_placeholders_test");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.mkdirs();
+        store = newStore();
+    }
+
+    @Test
+    public void keyVariesWithOrientationOnly() {
+        String portrait = TurbolinksPlaceholderStore.keyFor("https://example.com/", 1);
+
+        assertThat(portrait).isEqualTo(TurbolinksPlaceholderStore.keyFor("https://EXAMPLE.com:443/#top", 1));
+        assertThat(portrait).isNotEqualTo(TurbolinksPlaceholderStore.keyFor("https://example.com/", 2));
+    }
+
+    @Test
+    public void writtenPlaceholderIsFound() {
+        store.write("home", new byte[100]);
+
+        assertThat(store.getFreshFile("home", NOW)).isNotNull();
+        assertThat(store.getFreshFile("missing", NOW)).isNull();
+        assertThat(store.getSizeBytes()).isEqualTo(100);
+    }
+
+    @Test
+    public void stalePlaceholderIsDeleted() {
+        store.setMaxAgeMillis(1000);
+        store.write("home", new byte[100]);
+        File file = store.getFreshFile("home", NOW);
+
+        assertThat(store.getFreshFile("home", file.lastModified() + 1001)).isNull();
+        assertThat(file.exists()).isFalse();
+        assertThat(store.getSizeBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void writeEvictsLeastRecentlyUsedPlaceholders() {
+        store.setMaxSizeBytes(250);
+        store.write("first", new byte[100]);
+        store.write("second", new byte[100]);
+        store.getFreshFile("first", NOW);
+        store.write("third", new byte[100]);
+
+        assertThat(store.getFreshFile("second", NOW)).isNull();
+        assertThat(store.getFreshFile("first", NOW)).isNotNull();
+        assertThat(store.getFreshFile("third", NOW)).isNotNull();
+        assertThat(store.getSizeBytes()).isEqualTo(200);
+    }
+
+    @Test
+    public void placeholderLargerThanCapIsNotWritten() {
+        store.setMaxSizeBytes(50);
+        store.write("home", new byte[100]);
+
+        assertThat(store.getFreshFile("home", NOW)).isNull();
+        assertThat(store.getSizeBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void indexIsRebuiltFromDisk() {
+        store.write("home", new byte[100]);
+        store.write("projects", new byte[60]);
+
+        TurbolinksPlaceholderStore restarted = newStore();
+
+        assertThat(restarted.getSizeBytes()).isEqualTo(160);
+        assertThat(restarted.getFreshFile("projects", NOW)).isNotNull();
+        assertThat(restarted.clear()).isEqualTo(160);
+    }
+
+    @Test
+    public void recentlyWrittenPlaceholderIsNotRecaptured() {
+        long now = SystemClock.elapsedRealtime();
+        store.write("home", new byte[100]);
+
+        assertThat(store.wasCapturedRecently("home", now)).isTrue();
+        assertThat(store.wasCapturedRecently("projects", now)).isFalse();
+        assertThat(store.wasCapturedRecently("home", now + TurbolinksPlaceholderStore.RECAPTURE_INTERVAL_MILLIS)).isFalse();
+
+        store.clear();
+
+        assertThat(store.wasCapturedRecently("home", now)).isFalse();
+    }
+
+    @Test
+    public void clearDropsPendingWrites() {
+        final List<Runnable> queued = new ArrayList<>();
+        TurbolinksPlaceholderStore deferred = new TurbolinksPlaceholderStore(directory, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                queued.add(runnable);
+            }
+        });
+
+        deferred.put("home", Bitmap.createBitmap(10, 10, Bitmap.Config.RGB_565));
+        deferred.clear();
+        for (Runnable runnable : queued) {
+            runnable.run();
+        }
+
+        assertThat(deferred.getFreshFile("home", NOW)).isNull();
+        assertThat(deferred.getSizeBytes()).isEqualTo(0);
+    }
+
+    // ---------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------
+
+    private TurbolinksPlaceholderStore newStore() {
+        return new TurbolinksPlaceholderStore(directory, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksPrefetcherTest extends BaseTest {
+    private static final long PREFETCH_TIMEOUT_MILLIS = 5000;
+
+    private TurbolinksPrefetcher prefetcher;
+    private HttpServer server;
+    private String baseUrl;
+
+    @Before
+    public void setup() {
+        super.setup();
+        prefetcher = new TurbolinksPrefetcher();
+    }
+
+    @After
+    public void teardown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        CookieManager.getInstance().removeAllCookie();
+    }
+
+    @Test
+    public void takeWithoutPrefetchReturnsNull() {
+        assertThat(prefetcher.take("https://example.com/posts", null)).isNull();
+        assertThat(prefetcher.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void prefetchedResponseIsTakenOnce() throws Exception {
+        startServer();
+        String url = baseUrl + "/posts";
+
+        prefetcher.prefetch(url, baseUrl + "/", null, null);
+        awaitPrefetches(1);
+        WebResourceResponse response = prefetcher.take(url, null);
+
+        assertThat(response).isNotNull();
+        assertThat(new String(TurbolinksHttp.readFully(response.getData()), "UTF-8")).isEqualTo("posts body");
+        assertThat(prefetcher.getHitCount()).isEqualTo(1);
+        assertThat(prefetcher.take(url, null)).isNull();
+    }
+
+    @Test
+    public void prefetchedResponseSettingCookieIsTaken() throws Exception {
+        startServer();
+        String url = baseUrl + "/sign-in";
+
+        prefetcher.prefetch(url, baseUrl + "/", null, null);
+        awaitPrefetches(1);
+
+        assertThat(prefetcher.take(url, null)).isNotNull();
+    }
+
+    @Test
+    public void prefetchedResponseIsNotTakenAfterCookiesChange() throws Exception {
+        startServer();
+        String url = baseUrl + "/posts";
+
+        prefetcher.prefetch(url, baseUrl + "/", null, null);
+        awaitPrefetches(1);
+        CookieManager.getInstance().setCookie(url, "user=2");
+
+        assertThat(prefetcher.take(url, null)).isNull();
+        assertThat(prefetcher.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void maxConcurrencyCanGrowAndShrink() {
+        prefetcher.setMaxConcurrency(4);
+        assertThat(prefetcher.getMaxConcurrency()).isEqualTo(4);
+
+        prefetcher.setMaxConcurrency(1);
+        assertThat(prefetcher.getMaxConcurrency()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxConcurrencyMustBePositive() {
+        prefetcher.setMaxConcurrency(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void byteBudgetMustNotBeNegative() {
+        prefetcher.setByteBudget(-1);
+    }
+
+    @Test
+    public void zeroByteBudgetSkipsPrefetching() {
+        prefetcher.setByteBudget(0);
+        prefetcher.prefetch("https://example.com/posts", null, null, null);
+
+        assertThat(prefetcher.getPrefetchCount()).isEqualTo(0);
+    }
+
+    // ---------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------
+
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/posts", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, "posts body");
+            }
+        });
+        server.createContext("/sign-in", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Set-Cookie", "session=abc");
+                respond(exchange, "signed in body");
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+        exchange.close();
+    }
+
+    /**
+     * Prefetches run on the prefetcher's own threads.
+     */
+    private void awaitPrefetches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PREFETCH_TIMEOUT_MILLIS;
+        while (prefetcher.getPrefetchCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(prefetcher.getPrefetchCount()).isEqualTo(count);
+    }
+}
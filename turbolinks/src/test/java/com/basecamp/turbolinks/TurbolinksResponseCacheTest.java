@@ -0,0 +1,257 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksResponseCacheTest extends BaseTest {
+    private File directory;
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile String lastIfNoneMatch;
+
+    @Before
+    public void setup() {
+        super.setup();
+        directory = new File(context.getCacheDir(), "turbolinks_responses_test");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.mkdirs();
+    }
+
+    @After
+    public void teardown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        CookieManager.getInstance().removeAllCookie();
+    }
+
+    @Test
+    public void normalizeUrlDropsFragmentAndDefaultPort() {
+        assertThat(TurbolinksResponseCache.normalizeUrl("HTTPS://Example.com:443/posts?page=2#top"))
+                .isEqualTo("https://example.com/posts?page=2");
+        assertThat(TurbolinksResponseCache.normalizeUrl("http://example.com"))
+                .isEqualTo("http://example.com/");
+    }
+
+    @Test
+    public void keyVariesWithCustomHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Variant", "a");
+
+        String plain = TurbolinksResponseCache.keyFor("https://example.com/", null);
+        String variant = TurbolinksResponseCache.keyFor("https://example.com/", headers);
+
+        assertThat(plain).isEqualTo(TurbolinksResponseCache.keyFor("https://EXAMPLE.com/#x", null));
+        assertThat(variant).isNotEqualTo(plain);
+    }
+
+    @Test
+    public void onlyTurbolinksGetRequestsAreHandled() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("turbolinks-referrer", "https://example.com/");
+
+        assertThat(TurbolinksResponseCache.isTurbolinksVisitRequest("GET", headers)).isTrue();
+        assertThat(TurbolinksResponseCache.isTurbolinksVisitRequest("POST", headers)).isFalse();
+        assertThat(TurbolinksResponseCache.isTurbolinksVisitRequest("GET", new HashMap<String, String>())).isFalse();
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsedEntries() throws IOException {
+        writeEntry("old", 100, 1000);
+        writeEntry("new", 100, 2000);
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+
+        assertThat(cache.getSizeBytes()).isEqualTo(200);
+        assertThat(cache.trimToSize(150)).isEqualTo(100);
+        assertThat(new File(directory, "old.body").exists()).isFalse();
+        assertThat(new File(directory, "new.body").exists()).isTrue();
+    }
+
+    @Test
+    public void notModifiedIsAnsweredFromDisk() throws IOException {
+        startServer();
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+        String url = baseUrl + "/revalidate";
+
+        WebResourceResponse first = cache.intercept(url, visitHeaders(), null, null, null);
+        WebResourceResponse second = cache.intercept(url, visitHeaders(), null, null, null);
+
+        assertThat(first.getStatusCode()).isEqualTo(200);
+        assertThat(second.getStatusCode()).isEqualTo(200);
+        assertThat(new String(TurbolinksHttp.readFully(second.getData()), "UTF-8")).isEqualTo("revalidate body");
+        assertThat(lastIfNoneMatch).isEqualTo("\"v1\"");
+        assertThat(requestCount.get()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getRevalidateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void freshResponseIsNotServedAfterCookiesChange() throws IOException {
+        startServer();
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+        String url = baseUrl + "/fresh";
+
+        cache.intercept(url, visitHeaders(), null, null, null);
+        cache.intercept(url, visitHeaders(), null, null, null);
+
+        assertThat(requestCount.get()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        CookieManager.getInstance().setCookie(url, "user=2");
+        cache.intercept(url, visitHeaders(), null, null, null);
+
+        assertThat(requestCount.get()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void responseSettingCookieIsServedAfterwards() throws IOException {
+        startServer();
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+        String url = baseUrl + "/set-cookie";
+
+        cache.intercept(url, visitHeaders(), null, null, null);
+        WebResourceResponse second = cache.intercept(url, visitHeaders(), null, null, null);
+
+        assertThat(CookieManager.getInstance().getCookie(url)).contains("session=abc");
+        assertThat(second).isNotNull();
+        assertThat(requestCount.get()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void unfollowedRedirectIsLeftToWebView() throws IOException {
+        startServer();
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+
+        assertThat(cache.intercept(baseUrl + "/redirect", visitHeaders(), null, null, null)).isNull();
+    }
+
+    @Test
+    public void notModifiedWithoutStoredResponseIsLeftToWebView() throws IOException {
+        startServer();
+        TurbolinksResponseCache cache = new TurbolinksResponseCache(directory);
+
+        assertThat(cache.intercept(baseUrl + "/not-modified", visitHeaders(), null, null, null)).isNull();
+    }
+
+    @Test
+    public void onlyInterceptableStatusCodesAreBuilt() {
+        assertThat(TurbolinksHttp.buildResponse("https://example.com/", null, null, 302, null, null, new byte[0])).isNull();
+        assertThat(TurbolinksHttp.buildResponse("https://example.com/", null, null, 600, null, null, new byte[0])).isNull();
+        assertThat(TurbolinksHttp.isInterceptableStatus(200)).isTrue();
+        assertThat(TurbolinksHttp.isInterceptableStatus(404)).isTrue();
+    }
+
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/revalidate", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+                if ("\"v1\"".equals(lastIfNoneMatch)) {
+                    respond(exchange, 304, null);
+                } else {
+                    respond(exchange, 200, "revalidate body");
+                }
+            }
+        });
+        server.createContext("/fresh", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                respond(exchange, 200, "fresh body");
+            }
+        });
+        server.createContext("/set-cookie", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                exchange.getResponseHeaders().add("Set-Cookie", "session=abc");
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                respond(exchange, 200, "signed in body");
+            }
+        });
+        server.createContext("/redirect", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // HttpURLConnection doesn't follow redirects to another scheme
+                exchange.getResponseHeaders().add("Location", "https://127.0.0.1:1/elsewhere");
+                respond(exchange, 302, null);
+            }
+        });
+        server.createContext("/not-modified", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 304, null);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } else {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(statusCode, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+        exchange.close();
+    }
+
+    private static Map<String, String> visitHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(TurbolinksHttp.TURBOLINKS_REFERRER_HEADER, "https://example.com/");
+        return headers;
+    }
+
+    private void writeEntry(String key, int bodyBytes, long lastModified) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(directory, key + ".body"));
+        out.write(new byte[bodyBytes]);
+        out.close();
+
+        File meta = new File(directory, key + ".meta");
+        meta.createNewFile();
+        meta.setLastModified(lastModified);
+    }
+}
@@ -0,0 +1,79 @@
+package com.basecamp.turbolinks;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ActivityController;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksRestorationStoreTest extends BaseTest {
+    private TurbolinksRestorationStore store;
+
+    @Before
+    public void setup() {
+        super.setup();
+        store = new TurbolinksRestorationStore(2);
+    }
+
+    @Test
+    public void nullActivityIsIgnored() {
+        store.put(null, "id");
+
+        assertThat(store.get(null)).isNull();
+        assertThat(store.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void leastRecentlyUsedActivityIsEvicted() {
+        Activity first = newActivity();
+        Activity second = newActivity();
+        Activity third = newActivity();
+
+        store.put(first, "first");
+        store.put(second, "second");
+        store.get(first);
+        store.put(third, "third");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get(first)).isEqualTo("first");
+        assertThat(store.get(second)).isNull();
+        assertThat(store.get(third)).isEqualTo("third");
+    }
+
+    @Test
+    public void destroyedActivityIsRemoved() {
+        ActivityController<TurbolinksTestActivity> controller = Robolectric.buildActivity(TurbolinksTestActivity.class).create();
+
+        store.put(controller.get(), "id");
+        controller.destroy();
+
+        assertThat(store.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void identifierSurvivesSaveAndRestore() {
+        Activity activity = newActivity();
+        Bundle outState = new Bundle();
+
+        store.put(activity, "id");
+        store.save(activity, outState);
+
+        Activity recreated = newActivity();
+        store.restore(recreated, outState);
+
+        assertThat(store.get(recreated)).isEqualTo("id");
+    }
+
+    private Activity newActivity() {
+        return Robolectric.buildActivity(TurbolinksTestActivity.class).create().get();
+    }
+}
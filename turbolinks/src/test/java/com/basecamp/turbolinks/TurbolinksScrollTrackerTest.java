@@ -0,0 +1,91 @@
+package com.basecamp.turbolinks;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksScrollTrackerTest extends BaseTest {
+    private static final long FRAME_NANOS = 16_000_000L;
+
+    private View view;
+    private TurbolinksScrollTracker tracker;
+    private int atTopChanges;
+    private int scrolledCalls;
+    private float lastVelocityY;
+
+    @Before
+    public void setup() {
+        super.setup();
+        view = new View(context);
+        tracker = new TurbolinksScrollTracker(view, new TurbolinksScrollTracker.Callback() {
+            @Override
+            public void onAtTopChanged(boolean atTop) {
+                atTopChanges++;
+            }
+
+            @Override
+            public void onScrolled(int scrollX, int scrollY, float velocityY) {
+                scrolledCalls++;
+                lastVelocityY = velocityY;
+            }
+        });
+    }
+
+    @Test
+    public void atTopIsOnlyReportedOnTransitions() {
+        tracker.doFrame(FRAME_NANOS);
+        assertThat(atTopChanges).isEqualTo(1);
+        assertThat(tracker.isAtTop()).isTrue();
+
+        view.scrollTo(0, 100);
+        tracker.doFrame(2 * FRAME_NANOS);
+        view.scrollTo(0, 200);
+        tracker.doFrame(3 * FRAME_NANOS);
+
+        assertThat(atTopChanges).isEqualTo(2);
+        assertThat(tracker.isAtTop()).isFalse();
+
+        view.scrollTo(0, 0);
+        tracker.doFrame(4 * FRAME_NANOS);
+
+        assertThat(atTopChanges).isEqualTo(3);
+        assertThat(tracker.isAtTop()).isTrue();
+    }
+
+    @Test
+    public void velocityIsMeasuredBetweenFrames() {
+        tracker.doFrame(FRAME_NANOS);
+        view.scrollTo(0, 32);
+        tracker.doFrame(2 * FRAME_NANOS);
+
+        assertThat(lastVelocityY).isCloseTo(2000f, within(0.01f));
+    }
+
+    @Test
+    public void unchangedPositionIsNotReported() {
+        view.scrollTo(0, 10);
+        tracker.doFrame(FRAME_NANOS);
+        tracker.doFrame(2 * FRAME_NANOS);
+
+        assertThat(scrolledCalls).isEqualTo(1);
+    }
+
+    @Test
+    public void releasedTrackerIgnoresFrames() {
+        tracker.release();
+        view.scrollTo(0, 10);
+        tracker.doFrame(FRAME_NANOS);
+
+        assertThat(atTopChanges).isEqualTo(0);
+        assertThat(scrolledCalls).isEqualTo(0);
+    }
+}
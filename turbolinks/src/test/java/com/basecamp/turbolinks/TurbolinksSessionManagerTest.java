@@ -0,0 +1,108 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksSessionManagerTest extends BaseTest {
+    private static final String LOCATION = "https://basecamp.com/inbox";
+
+    private TurbolinksSessionManager manager;
+
+    @Before
+    public void setup() {
+        super.setup();
+        manager = new TurbolinksSessionManager(context, 2 * TurbolinksSessionManager.WEBVIEW_COST_BYTES);
+    }
+
+    @Test
+    public void sameKeyReturnsSameSession() {
+        TurbolinksSession session = manager.get("inbox");
+
+        assertThat(manager.get("inbox")).isSameAs(session);
+        assertThat(manager.getHitCount()).isEqualTo(1);
+        assertThat(manager.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void leastRecentlyUsedSessionIsEvictedOverBudget() {
+        TurbolinksSession inbox = manager.get("inbox");
+        manager.get("projects");
+        manager.get("inbox");
+        manager.get("activity");
+
+        assertThat(manager.size()).isEqualTo(2);
+        assertThat(manager.peek("projects")).isNull();
+        assertThat(manager.peek("inbox")).isSameAs(inbox);
+        assertThat(manager.getEvictionCount()).isEqualTo(1);
+        assertThat(manager.getApproximateMemoryBytes()).isLessThanOrEqualTo(manager.getMemoryBudgetBytes());
+    }
+
+    @Test
+    public void evictedSessionIsRecreatedWithItsLocation() {
+        manager.get("inbox").location = LOCATION;
+        manager.get("projects");
+        manager.get("activity");
+
+        TurbolinksSession restored = manager.get("inbox");
+
+        assertThat(restored.getLocation()).isEqualTo(LOCATION);
+        assertThat(manager.getRestoreCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictionListenerIsTold() {
+        final List<String> evicted = new ArrayList<>();
+        manager.setEvictionListener(new TurbolinksSessionEvictionListener() {
+            @Override
+            public void onSessionEvicted(String key, TurbolinksSession session) {
+                evicted.add(key);
+                assertThat(session.getWebView()).isNull();
+            }
+        });
+
+        manager.get("inbox");
+        manager.get("projects");
+        manager.get("activity");
+
+        assertThat(evicted).containsExactly("inbox");
+    }
+
+    @Test
+    public void sessionWithAttachedViewIsNotEvicted() {
+        TurbolinksTestActivity activity = Robolectric.buildActivity(TurbolinksTestActivity.class)
+                .create().start().resume().visible().get();
+        TurbolinksView view = new TurbolinksView(activity);
+        activity.setContentView(view);
+        TurbolinksSession inbox = manager.get("inbox").view(view);
+        manager.get("projects");
+        manager.get("activity");
+
+        assertThat(manager.peek("inbox")).isSameAs(inbox);
+        assertThat(manager.peek("projects")).isNull();
+        assertThat(inbox.getWebView()).isNotNull();
+    }
+
+    @Test
+    public void mostRecentSessionIsKeptEvenOverBudget() {
+        manager.get("inbox");
+        manager.setMemoryBudgetBytes(1);
+
+        assertThat(manager.size()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetMustBePositive() {
+        manager.setMemoryBudgetBytes(0);
+    }
+}
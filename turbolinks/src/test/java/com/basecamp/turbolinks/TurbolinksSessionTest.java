@@ -1,6 +1,7 @@
 package com.basecamp.turbolinks;
 
 import android.app.Activity;
+import android.view.View;
 import android.widget.FrameLayout;
 
 import org.junit.Before;
@@ -11,9 +12,13 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Matchers.any;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = TestBuildConfig.class)
@@ -25,6 +30,7 @@ public class TurbolinksSessionTest extends BaseTest {
     private static final String LOCATION = "https://basecamp.com";
     private static final String VISIT_IDENTIFIER = "visitIdentifierValue";
     private static final String RESTORATION_IDENTIFIER = "restorationIdentifierValue";
+    private static final int PROGRESS_INDICATOR_ID = 123;
 
     private TurbolinksView view;
     private TurbolinksSession turbolinksSession;
@@ -87,7 +93,7 @@ public class TurbolinksSessionTest extends BaseTest {
     public void progressViewWithInvalidProgressIndicator() {
         turbolinksSession.activity(activity)
             .adapter(adapter)
-//            .progressView(progressView, 123, 0)
+            .progressView(progressView, 123, 0)
             .view(view)
             .visit(LOCATION);
     }
@@ -116,6 +122,7 @@ public class TurbolinksSessionTest extends BaseTest {
         turbolinksSession.activity(activity)
             .adapter(adapter);
         turbolinksSession.visitProposedToLocationWithAction(LOCATION, TurbolinksSession.ACTION_ADVANCE);
+        turbolinksSession.eventDispatcher.flush();
 
         verify(adapter).visitProposedToLocationWithAction(any(String.class), any(String.class));
     }
@@ -144,6 +151,7 @@ public class TurbolinksSessionTest extends BaseTest {
             .adapter(adapter);
         turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
         turbolinksSession.visitRequestFailedWithStatusCode(VISIT_IDENTIFIER, 0);
+        turbolinksSession.eventDispatcher.flush();
 
         verify(adapter).requestFailedWithStatusCode(any(int.class));
     }
@@ -158,19 +166,73 @@ public class TurbolinksSessionTest extends BaseTest {
             .view(view);
         turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
         turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER);
+        turbolinksSession.eventDispatcher.flush();
 
         verify(adapter).visitCompleted();
     }
 
     @Test
     public void visitCompletedSavesRestorationIdentifier() {
-        assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(0);
+        assertThat(turbolinksSession.restorationStore.size()).isEqualTo(0);
 
         turbolinksSession.activity(activity)
             .adapter(adapter);
         turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER);
 
-        assertThat(turbolinksSession.restorationIdentifierMap.size()).isEqualTo(1);
+        assertThat(turbolinksSession.restorationStore.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void visitMetricsDeliveredAfterCompletedAndRendered() {
+        TurbolinksTestActivity activity = new TurbolinksTestActivity();
+        final List<TurbolinksVisitMetrics> delivered = new ArrayList<>();
+
+        turbolinksSession.activity(activity)
+            .adapter(adapter)
+            .view(view);
+        turbolinksSession.setVisitMetricsListener(new TurbolinksVisitMetricsListener() {
+            @Override
+            public void onVisitFinished(TurbolinksVisitMetrics metrics) {
+                delivered.add(metrics);
+            }
+        });
+        turbolinksSession.visitProposedToLocationWithAction(LOCATION, TurbolinksSession.ACTION_ADVANCE);
+        turbolinksSession.visitStarted(VISIT_IDENTIFIER, true, 1);
+        turbolinksSession.visitRendered(VISIT_IDENTIFIER, 2);
+        turbolinksSession.visitRequestCompleted(VISIT_IDENTIFIER, 3);
+        turbolinksSession.visitCompleted(VISIT_IDENTIFIER, RESTORATION_IDENTIFIER, 4);
+
+        assertThat(delivered).isEmpty();
+
+        turbolinksSession.visitRendered(VISIT_IDENTIFIER, 5);
+
+        assertThat(delivered).hasSize(1);
+        TurbolinksVisitMetrics metrics = delivered.get(0);
+        assertThat(metrics.getLocation()).isEqualTo(LOCATION);
+        assertThat(metrics.hasCachedSnapshot()).isTrue();
+        assertThat(metrics.getJsRenderedMillis()).isEqualTo(5);
+        assertThat(metrics.getProposeToRenderMillis()).isGreaterThanOrEqualTo(metrics.getProposeToFirstRenderMillis());
+        assertThat(turbolinksSession.visitMetrics).isEmpty();
+    }
+
+    @Test
+    public void pageMetricsUpdateHeightAndNotifyListener() {
+        TurbolinksTestActivity activity = new TurbolinksTestActivity();
+        final List<String> titles = new ArrayList<>();
+        float density = context.getResources().getDisplayMetrics().density;
+
+        turbolinksSession.activity(activity);
+        turbolinksSession.setPageMetricsListener(new TurbolinksPageMetricsListener() {
+            @Override
+            public void onPageMetricsChanged(int pageHeight, int scrollX, int scrollY, String title) {
+                titles.add(title);
+            }
+        });
+        turbolinksSession.pageMetricsChanged(2000, 0, 150, "Basecamp");
+
+        assertThat(turbolinksSession.getWebviewPageHeight()).isEqualTo((int) (2000 * density));
+        assertThat(turbolinksSession.getWebviewPageTitle()).isEqualTo("Basecamp");
+        assertThat(titles).containsExactly("Basecamp");
     }
 
 //    TODO: Robolectric having trouble with local resources directory
@@ -191,16 +253,66 @@ public class TurbolinksSessionTest extends BaseTest {
         // Mock doesn't seem to work for running on the main thread
         TurbolinksTestActivity activity = new TurbolinksTestActivity();
 
-        turbolinksSession.activity(activity);
-        turbolinksSession.turbolinksIsReady = true;
+        turbolinksSession.activity(activity)
+            .progressView(customProgressView(), PROGRESS_INDICATOR_ID, 0);
+        turbolinksSession.state.moveTo(TurbolinksSessionState.READY, "test");
         turbolinksSession.turbolinksView = view;
-//        turbolinksSession.progressView = new FrameLayout(context);
-        turbolinksSession.currentVisitIdentifier = VISIT_IDENTIFIER;
+        turbolinksSession.visitStarted(VISIT_IDENTIFIER, false);
+        turbolinksSession.eventDispatcher.flush();
+
+        assertThat(view.isProgressShowing()).isTrue();
+
+        turbolinksSession.hideProgressView(VISIT_IDENTIFIER);
+        turbolinksSession.eventDispatcher.flush();
+
+        assertThat(view.isProgressShowing()).isFalse();
+        assertThat(turbolinksSession.progressView.getParent()).isNull();
+    }
+
+    @Test
+    public void visitWithCachedSnapshotSkipsProgressView() {
+        TurbolinksTestActivity activity = new TurbolinksTestActivity();
+
+        turbolinksSession.activity(activity)
+            .progressView(customProgressView(), PROGRESS_INDICATOR_ID, 0);
+        turbolinksSession.turbolinksView = view;
+        turbolinksSession.visitStarted(VISIT_IDENTIFIER, true);
+        turbolinksSession.eventDispatcher.flush();
+
+        assertThat(view.isProgressShowing()).isFalse();
+    }
+
+    @Test
+    public void progressViewIsReusedAcrossVisits() {
+        TurbolinksTestActivity activity = new TurbolinksTestActivity();
+        FrameLayout customProgressView = customProgressView();
+
+        turbolinksSession.activity(activity)
+            .progressView(customProgressView, PROGRESS_INDICATOR_ID, 0);
+        turbolinksSession.state.moveTo(TurbolinksSessionState.READY, "test");
+        turbolinksSession.turbolinksView = view;
+        turbolinksSession.visitStarted(VISIT_IDENTIFIER, false);
         turbolinksSession.hideProgressView(VISIT_IDENTIFIER);
+        turbolinksSession.visitStarted("nextVisitIdentifier", false);
+        turbolinksSession.eventDispatcher.flush();
 
-//        assertThat(turbolinksSession.progressView.getParent()).isNull();
+        assertThat(view.isProgressShowing()).isTrue();
+        assertThat(customProgressView.getParent()).isEqualTo(view);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeProgressIndicatorDelay() {
+        turbolinksSession.setProgressIndicatorDelay(-1);
+    }
+
+
+    private FrameLayout customProgressView() {
+        FrameLayout customProgressView = new FrameLayout(context);
+        View indicator = new View(context);
+        indicator.setId(PROGRESS_INDICATOR_ID);
+        customProgressView.addView(indicator);
+        return customProgressView;
+    }
 
     // -----------------------------------------------------------------------
     // Public
@@ -232,20 +344,50 @@ public class TurbolinksSessionTest extends BaseTest {
     public void resetToColdBoot() {
         turbolinksSession.activity(activity)
             .adapter(adapter);
-        turbolinksSession.bridgeInjectionInProgress = true;
-        turbolinksSession.turbolinksIsReady = true;
-        turbolinksSession.coldBootInProgress = false;
+        turbolinksSession.state.moveTo(TurbolinksSessionState.INJECTING_BRIDGE, "test");
         turbolinksSession.resetToColdBoot();
 
-        assertThat(turbolinksSession.bridgeInjectionInProgress).isFalse();
-        assertThat(turbolinksSession.turbolinksIsReady).isFalse();
-        assertThat(turbolinksSession.coldBootInProgress).isFalse();
+        assertThat(turbolinksSession.getState()).isEqualTo(TurbolinksSessionState.IDLE);
+        assertThat(turbolinksSession.turbolinksIsReady()).isFalse();
     }
 
     @Test
     public void turbolinksIsReady() {
-        turbolinksSession.turbolinksIsReady = true;
+        turbolinksSession.state.moveTo(TurbolinksSessionState.READY, "test");
 
         assertThat(turbolinksSession.turbolinksIsReady()).isTrue();
     }
+
+    @Test
+    public void stateTransitionsOnlyFromExpectedState() {
+        assertThat(turbolinksSession.state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.COLD_BOOTING, "visit")).isTrue();
+        assertThat(turbolinksSession.state.transition(TurbolinksSessionState.IDLE, TurbolinksSessionState.COLD_BOOTING, "visit")).isFalse();
+
+        assertThat(turbolinksSession.getStateTransitionLog()).hasSize(1);
+        assertThat(turbolinksSession.getStateTransitionLog().get(0)).startsWith("IDLE -> COLD_BOOTING (visit)");
+    }
+
+    @Test
+    public void coldBootLoadsAppShellWithOriginAsBaseUrl() {
+        turbolinksSession.setAppShellAsset("shell.html");
+        turbolinksSession.appShellHtml = "<html><body></body></html>";
+        turbolinksSession.location = LOCATION;
+        turbolinksSession.coldBoot();
+
+        assertThat(shadowOf(turbolinksSession.getWebView()).getLastLoadDataWithBaseURL().baseUrl).isEqualTo("https://basecamp.com/");
+        assertThat(turbolinksSession.appShellBootInProgress).isTrue();
+    }
+
+    @Test
+    public void coldBootLoadsFromNetworkWhenAppShellIsBypassed() {
+        turbolinksSession.setAppShellAsset("shell.html");
+        turbolinksSession.appShellHtml = "<html><body></body></html>";
+        turbolinksSession.appShellBypassed = true;
+        turbolinksSession.location = LOCATION;
+        turbolinksSession.coldBoot();
+
+        assertThat(shadowOf(turbolinksSession.getWebView()).getLastLoadedUrl()).isEqualTo(LOCATION);
+        assertThat(turbolinksSession.appShellBootInProgress).isFalse();
+        assertThat(turbolinksSession.appShellBypassed).isFalse();
+    }
 }
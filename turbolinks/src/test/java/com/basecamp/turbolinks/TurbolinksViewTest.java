@@ -1,5 +1,6 @@
 package com.basecamp.turbolinks;
 
+import android.graphics.Bitmap;
 import android.webkit.WebView;
 
 import org.junit.Before;
@@ -10,11 +11,16 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricGradleTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.Arrays;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(RobolectricGradleTestRunner.class)
 @Config(constants = TestBuildConfig.class)
 public class TurbolinksViewTest extends BaseTest {
+    private static final int TIMING_RUNS = 9;
+    private static final long TIMING_SLACK_NANOS = 1000000;
+
     @Mock WebView webView;
 
     @Before
@@ -37,4 +43,94 @@ public class TurbolinksViewTest extends BaseTest {
 
         assertThat(view.getRefreshLayout().getChildAt(1)).isEqualTo(webView);
     }
+
+    @Test
+    public void downscaledScreenshotUsesFewerBytes() {
+        TurbolinksBitmapPool.getInstance().clear();
+        TurbolinksView view = new TurbolinksView(context);
+        view.layout(0, 0, 1080, 1920);
+
+        Bitmap full = view.getScreenshotBitmap(new TurbolinksScreenshotOptions());
+        Bitmap scaled = view.getScreenshotBitmap(new TurbolinksScreenshotOptions()
+                .scale(0.5f)
+                .config(Bitmap.Config.RGB_565));
+
+        assertThat(full.getWidth()).isEqualTo(1080);
+        assertThat(scaled.getWidth()).isEqualTo(540);
+        assertThat(scaled.getHeight()).isEqualTo(960);
+        assertThat(scaled.getByteCount()).isEqualTo(full.getByteCount() / 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void screenshotScaleMustBePositive() {
+        new TurbolinksScreenshotOptions().scale(0);
+    }
+
+    // Draw only; PixelCopy needs a real window surface and can't run under Robolectric.
+    @Test
+    public void screenshotMatchesScaleAndConfig() {
+        int[][] sizes = {{480, 800}, {1080, 1920}, {1440, 2560}};
+        TurbolinksScreenshotOptions[] strategies = {
+                new TurbolinksScreenshotOptions(),
+                new TurbolinksScreenshotOptions().scale(0.5f).config(Bitmap.Config.RGB_565),
+                new TurbolinksScreenshotOptions().scale(0.25f).config(Bitmap.Config.RGB_565)
+        };
+
+        for (int[] size : sizes) {
+            TurbolinksView view = new TurbolinksView(context);
+            view.layout(0, 0, size[0], size[1]);
+
+            for (TurbolinksScreenshotOptions options : strategies) {
+                TurbolinksBitmapPool.getInstance().clear();
+                Bitmap bitmap = view.getScreenshotBitmap(options);
+
+                assertThat(bitmap).isNotNull();
+                assertThat(bitmap.getWidth()).isEqualTo(options.scaledSize(size[0]));
+                assertThat(bitmap.getHeight()).isEqualTo(options.scaledSize(size[1]));
+                assertThat(bitmap.getConfig()).isEqualTo(options.getConfig());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void screenshotConfigMustNotBeNull() {
+        new TurbolinksScreenshotOptions().config(null);
+    }
+
+    // Draw only, like screenshotMatchesScaleAndConfig. The timings are reported in the assertion
+    // description; the bound is loose so scheduling noise can't fail the build.
+    @Test
+    public void downscaledScreenshotIsNotSlowerThanFullSize() {
+        int[][] sizes = {{480, 800}, {1080, 1920}, {1440, 2560}};
+        TurbolinksScreenshotOptions full = new TurbolinksScreenshotOptions();
+        TurbolinksScreenshotOptions quarter = new TurbolinksScreenshotOptions().scale(0.25f).config(Bitmap.Config.RGB_565);
+
+        for (int[] size : sizes) {
+            TurbolinksView view = new TurbolinksView(context);
+            view.layout(0, 0, size[0], size[1]);
+
+            long fullNanos = medianScreenshotNanos(view, full);
+            long quarterNanos = medianScreenshotNanos(view, quarter);
+
+            assertThat(quarterNanos)
+                    .as(size[0] + "x" + size[1] + ": full " + fullNanos + " ns, quarter " + quarterNanos + " ns")
+                    .isLessThanOrEqualTo(2 * fullNanos + TIMING_SLACK_NANOS);
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------
+
+    private static long medianScreenshotNanos(TurbolinksView view, TurbolinksScreenshotOptions options) {
+        long[] nanos = new long[TIMING_RUNS];
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            TurbolinksBitmapPool.getInstance().clear();
+            long start = System.nanoTime();
+            view.getScreenshotBitmap(options);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[TIMING_RUNS / 2];
+    }
 }
@@ -0,0 +1,86 @@
+package com.basecamp.turbolinks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksVisitSchedulerTest extends BaseTest {
+    private static final String INBOX = "https://basecamp.com/inbox";
+    private static final String PROJECTS = "https://basecamp.com/projects";
+
+    private TurbolinksVisitScheduler scheduler;
+
+    @Before
+    public void setup() {
+        super.setup();
+        scheduler = new TurbolinksVisitScheduler();
+    }
+
+    @Test
+    public void duplicateProposalsAreCoalesced() {
+        assertThat(scheduler.propose(INBOX, 1000)).isTrue();
+        assertThat(scheduler.propose("HTTPS://Basecamp.com:443/inbox#top", 1100)).isFalse();
+
+        assertThat(scheduler.getCoalescedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void differentLocationInsideWindowIsNotLost() {
+        assertThat(scheduler.propose(INBOX, 1000)).isTrue();
+        assertThat(scheduler.propose(PROJECTS, 1100)).isTrue();
+    }
+
+    @Test
+    public void proposalForVisitInFlightIsDropped() {
+        scheduler.propose(INBOX, 1000);
+        scheduler.commit(INBOX);
+        scheduler.started("visit-1", INBOX);
+
+        assertThat(scheduler.propose(INBOX, 5000)).isFalse();
+        assertThat(scheduler.getDroppedCount()).isEqualTo(1);
+
+        scheduler.finished("visit-1");
+
+        assertThat(scheduler.propose(INBOX, 9000)).isTrue();
+    }
+
+    @Test
+    public void newerVisitCancelsVisitInFlight() {
+        scheduler.commit(INBOX);
+        assertThat(scheduler.started("visit-1", INBOX)).isNull();
+        scheduler.commit(PROJECTS);
+
+        assertThat(scheduler.started("visit-2", PROJECTS)).isEqualTo("visit-1");
+        assertThat(scheduler.getCancelledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void inFlightLocationComesFromStartedVisit() {
+        // A restoration visit to the inbox, while the last committed visit went to projects
+        scheduler.commit(PROJECTS);
+        scheduler.started("visit-1", INBOX);
+
+        assertThat(scheduler.propose(INBOX, 1000)).isFalse();
+        assertThat(scheduler.propose(PROJECTS, 2000)).isTrue();
+    }
+
+    @Test
+    public void inFlightLocationFallsBackToCommittedLocation() {
+        scheduler.commit(INBOX);
+        scheduler.started("visit-1", null);
+
+        assertThat(scheduler.propose(INBOX, 1000)).isFalse();
+    }
+
+    @Test
+    public void canonicalizeNormalizesPathAndDropsFragment() {
+        assertThat(TurbolinksVisitScheduler.canonicalize("http://Example.com:80#a")).isEqualTo("http://example.com/");
+        assertThat(TurbolinksVisitScheduler.canonicalize("https://example.com:8443/a?b=c")).isEqualTo("https://example.com:8443/a?b=c");
+    }
+}
@@ -0,0 +1,93 @@
+package com.basecamp.turbolinks;
+
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = TestBuildConfig.class)
+public class TurbolinksWebViewPoolTest extends BaseTest {
+    private TurbolinksWebViewPool pool;
+
+    @Before
+    public void setup() {
+        super.setup();
+        pool = TurbolinksWebViewPool.getInstance(context);
+        pool.prewarm(0);
+    }
+
+    @Test
+    public void getInstanceReturnsSameInstance() {
+        assertThat(pool).isEqualTo(TurbolinksWebViewPool.getInstance(context));
+    }
+
+    @Test
+    public void acquireFromEmptyPoolCountsMiss() {
+        int misses = pool.getMissCount();
+        int hits = pool.getHitCount();
+
+        assertThat(pool.acquire()).isNotNull();
+        assertThat(pool.getMissCount()).isEqualTo(misses + 1);
+        assertThat(pool.getHitCount()).isEqualTo(hits);
+    }
+
+    @Test
+    public void releaseAboveTargetSizeDoesNotPool() {
+        WebView webView = pool.acquire();
+        int available = pool.getAvailableCount();
+
+        pool.release(webView);
+
+        assertThat(pool.getAvailableCount()).isEqualTo(available);
+    }
+
+    @Test
+    public void releasedWebViewIsOfferedOnceBlankPageHasLoaded() {
+        pool.prewarm(1);
+        pool.trim();
+        WebView released = pool.acquire();
+        pool.trim();
+
+        pool.release(released);
+
+        assertThat(pool.getAvailableCount()).isEqualTo(0);
+        assertThat(pool.acquire()).isNotSameAs(released);
+
+        WebViewClient resetClient = shadowOf(released).getWebViewClient();
+        resetClient.onPageFinished(released, "about:blank");
+        int hits = pool.getHitCount();
+
+        assertThat(pool.acquire()).isSameAs(released);
+        assertThat(pool.getHitCount()).isEqualTo(hits + 1);
+        assertThat(shadowOf(released).wasClearHistoryCalled()).isTrue();
+
+        pool.prewarm(0);
+        pool.trim();
+    }
+
+    @Test
+    public void sessionTakesWebViewFromPool() {
+        int misses = pool.getMissCount();
+
+        TurbolinksSession session = TurbolinksSession.getNew(context);
+
+        assertThat(session.getWebView()).isNotNull();
+        assertThat(pool.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void clearInstanceReleasesWebView() {
+        TurbolinksSession session = TurbolinksSession.getNew(context);
+        session.clearInstance();
+
+        assertThat(session.getWebView()).isNull();
+    }
+}